@@ -0,0 +1,86 @@
+package urbane.urbanewebapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClientBuilder;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * One Cognito client for the whole application. Building a client resolves credentials and endpoints
+ * and starts a new HTTP connection pool, so it is done once here rather than per call; the pooled
+ * connections stay open between logins.
+ *
+ * The async client serves the auth endpoints: its calls run on a few Netty event loop threads, so a
+ * slow identity provider no longer holds a servlet thread per request.
+ */
+@Configuration
+public class CognitoClientConfig {
+
+    @Value("${cognito.region:${COGNITO_REGION:us-east-1}}")
+    private String region;
+
+    // Points the client at another Cognito endpoint, e.g. a local stand-in in tests
+    @Value("${cognito.endpoint:}")
+    private String endpoint;
+
+    @Value("${cognito.client.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${cognito.client.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${cognito.client.socket-timeout-ms:5000}")
+    private long socketTimeoutMs;
+
+    @Value("${cognito.client.connection-max-idle-ms:60000}")
+    private long connectionMaxIdleMs;
+
+    @Value("${cognito.client.api-call-timeout-ms:10000}")
+    private long apiCallTimeoutMs;
+
+    @Bean(destroyMethod = "close")
+    public CognitoIdentityProviderClient cognitoIdentityProviderClient() {
+        CognitoIdentityProviderClientBuilder builder = CognitoIdentityProviderClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionTimeout(Duration.ofMillis(connectTimeoutMs))
+                        .socketTimeout(Duration.ofMillis(socketTimeoutMs))
+                        .connectionMaxIdleTime(Duration.ofMillis(connectionMaxIdleMs))
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(config -> config.apiCallTimeout(Duration.ofMillis(apiCallTimeoutMs)));
+        if (!endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CognitoIdentityProviderAsyncClient cognitoIdentityProviderAsyncClient() {
+        CognitoIdentityProviderAsyncClientBuilder builder = CognitoIdentityProviderAsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConnections)
+                        .connectionTimeout(Duration.ofMillis(connectTimeoutMs))
+                        .readTimeout(Duration.ofMillis(socketTimeoutMs))
+                        .connectionMaxIdleTime(Duration.ofMillis(connectionMaxIdleMs))
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(config -> config.apiCallTimeout(Duration.ofMillis(apiCallTimeoutMs)));
+        if (!endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+}
@@ -27,6 +27,8 @@ public class CorsConfig {
         
         // Allow common headers
         config.addAllowedHeader("*");
+        // Let the browser read pagination cursors
+        config.addExposedHeader("X-Next-Cursor");
         config.setAllowCredentials(true);
         
         // Apply CORS configuration to all endpoints
@@ -4,11 +4,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.AuthenticationResultType;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.InitiateAuthResponse;
-import software.amazon.awssdk.services.cognitoidentityprovider.model.ConfirmSignUpResponse;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.NotAuthorizedException;
-import software.amazon.awssdk.services.cognitoidentityprovider.model.SignUpResponse;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.UserNotConfirmedException;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.UserNotFoundException;
 import urbane.urbanewebapp.dto.request.CognitoConfirmRequest;
@@ -16,10 +15,16 @@ import urbane.urbanewebapp.dto.request.CognitoLoginRequest;
 import urbane.urbanewebapp.dto.request.CognitoRegisterRequest;
 import urbane.urbanewebapp.model.User;
 import urbane.urbanewebapp.repository.UserRepository;
+import urbane.urbanewebapp.service.AuthFlowLimiter;
 import urbane.urbanewebapp.service.CognitoService;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/auth")
@@ -31,75 +36,94 @@ public class AuthController {
     @Autowired
     private UserRepository userRepository;
 
-    @PostMapping("/register")
-    public ResponseEntity<Map<String, Object>> register(@RequestBody CognitoRegisterRequest request) {
-        try {
-            // Check if user already exists in our database
-            if (userRepository.existsByEmail(request.getEmail())) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Email already registered");
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
+    @Autowired
+    private AuthFlowLimiter authFlowLimiter;
 
-            // Register user in Cognito
-            SignUpResponse signUpResponse = cognitoService.signUp(request.getEmail(), request.getPassword());
+    /*
+     * register, confirm and login return CompletableFutures on the async Cognito client, so the servlet thread
+     * is released while Cognito answers. Each flow runs under its own bulkhead and timeout (AuthFlowLimiter):
+     * a full bulkhead answers 503 and a timeout 504. The database work after the Cognito call hops to the
+     * limiter's database executor, so blocking JPA calls never hold the SDK's completion threads.
+     */
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Registration successful. Please check your email for verification code.");
-            response.put("userSub", signUpResponse.userSub());
-            response.put("email", request.getEmail());
-            
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            System.err.println("Error registering user: " + e.getMessage());
-            e.printStackTrace();
+    @PostMapping("/register")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> register(@RequestBody CognitoRegisterRequest request) {
+        // Check if user already exists in our database
+        if (userRepository.existsByEmail(request.getEmail())) {
             Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", e.getMessage());
-            if (e.getMessage() != null && e.getMessage().contains("already exists")) {
-                return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
-            }
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            errorResponse.put("error", "Email already registered");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
         }
+
+        // Register user in Cognito
+        return authFlowLimiter.run(AuthFlowLimiter.REGISTER, () -> cognitoService.signUpAsync(request.getEmail(), request.getPassword()))
+                .thenApply(signUpResponse -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("message", "Registration successful. Please check your email for verification code.");
+                    response.put("userSub", signUpResponse.userSub());
+                    response.put("email", request.getEmail());
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(error -> {
+                    Throwable e = unwrap(error);
+                    ResponseEntity<Map<String, Object>> unavailable = unavailableResponse(e);
+                    if (unavailable != null) {
+                        return unavailable;
+                    }
+                    System.err.println("Error registering user: " + e.getMessage());
+                    e.printStackTrace();
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("error", e.getMessage());
+                    if (e.getMessage() != null && e.getMessage().contains("already exists")) {
+                        return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
+                    }
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+                });
     }
 
     @PostMapping("/confirm")
-    public ResponseEntity<Map<String, Object>> confirm(@RequestBody CognitoConfirmRequest request) {
-        boolean alreadyConfirmed = false;
-        
-        try {
-            // Confirm user in Cognito
-            ConfirmSignUpResponse confirmResponse = cognitoService.confirmSignUp(request.getEmail(), request.getConfirmationCode());
-        } catch (Exception e) {
-            // Check if user is already confirmed
-            String errorMessage = e.getMessage();
-            if (errorMessage != null && errorMessage.contains("CONFIRMED")) {
-                // User is already confirmed, which is fine - proceed with database creation
-                alreadyConfirmed = true;
-                System.out.println("User is already confirmed in Cognito, proceeding with database setup");
-            } else {
-                // Some other error occurred
-                System.err.println("Error confirming user: " + errorMessage);
-                e.printStackTrace();
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", errorMessage);
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
-        }
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> confirm(@RequestBody CognitoConfirmRequest request) {
+        return authFlowLimiter.run(AuthFlowLimiter.CONFIRM, () -> cognitoService.confirmSignUpAsync(request.getEmail(), request.getConfirmationCode())
+                        .handle((confirmResponse, error) -> {
+                            if (error == null) {
+                                return false;
+                            }
+                            // Check if user is already confirmed
+                            Throwable e = unwrap(error);
+                            if (e.getMessage() != null && e.getMessage().contains("CONFIRMED")) {
+                                // User is already confirmed, which is fine - proceed with database creation
+                                System.out.println("User is already confirmed in Cognito, proceeding with database setup");
+                                return true;
+                            }
+                            throw new CompletionException(e);
+                        })
+                        // Try to get cognitoSub, but don't fail if we can't (it is set on first login)
+                        .thenCompose(alreadyConfirmed -> cognitoService.getUserSubAsync(request.getEmail())
+                                .thenApplyAsync(cognitoSub -> confirmedResponse(request, cognitoSub, alreadyConfirmed),
+                                        authFlowLimiter.databaseExecutor())))
+                .exceptionally(error -> {
+                    Throwable e = unwrap(error);
+                    ResponseEntity<Map<String, Object>> unavailable = unavailableResponse(e);
+                    if (unavailable != null) {
+                        return unavailable;
+                    }
+                    // Some other error occurred
+                    System.err.println("Error confirming user: " + e.getMessage());
+                    e.printStackTrace();
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("error", e.getMessage());
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+                });
+    }
 
+    private ResponseEntity<Map<String, Object>> confirmedResponse(CognitoConfirmRequest request, String cognitoSub, boolean alreadyConfirmed) {
         // Create user in database (whether newly confirmed or already confirmed)
-        // Note: cognitoSub will be set on first login when we decode the ID token
+        // Note: if cognitoSub is null it will be set on first login when we decode the ID token
         User user = new User();
         user.setEmail(request.getEmail());
         user.setPassword(null); // Explicitly set to null since we use Cognito for auth
-        // Try to get cognitoSub, but don't fail if we can't
-        try {
-            String cognitoSub = cognitoService.getUserSub(request.getEmail());
-            user.setCognitoSub(cognitoSub);
-        } catch (Exception e) {
-            // Will be set on first login
-            System.out.println("Could not get cognitoSub during confirmation, will set on first login");
-        }
-        
+        user.setCognitoSub(cognitoSub);
+
         // Check if user already exists (in case of race condition)
         if (!userRepository.existsByEmail(request.getEmail())) {
             userRepository.save(user);
@@ -112,74 +136,87 @@ public class AuthController {
             response.put("message", "Email verified successfully");
         }
         response.put("email", request.getEmail());
-        
+
         return ResponseEntity.ok(response);
     }
 
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@RequestBody CognitoLoginRequest request) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> login(@RequestBody CognitoLoginRequest request) {
+        // Authenticate with Cognito
+        return authFlowLimiter.run(AuthFlowLimiter.LOGIN, () -> cognitoService.initiateAuthAsync(request.getEmail(), request.getPassword())
+                        .thenCompose(authResponse -> {
+                            // Check if there's a challenge (e.g., NEW_PASSWORD_REQUIRED)
+                            if (authResponse.challengeName() != null) {
+                                return CompletableFuture.completedFuture(challengeResponse(authResponse));
+                            }
+                            AuthenticationResultType authResult = authResponse.authenticationResult();
+                            return cognitoSubOf(request, authResult)
+                                    .thenApplyAsync(cognitoSub -> loggedInResponse(request, authResult, cognitoSub),
+                                            authFlowLimiter.databaseExecutor());
+                        }))
+                .exceptionally(error -> loginErrorResponse(unwrap(error)));
+    }
+
+    private CompletableFuture<String> cognitoSubOf(CognitoLoginRequest request, AuthenticationResultType authResult) {
+        // Extract sub from ID token (more reliable than AdminGetUser)
         try {
-            // Authenticate with Cognito
-            InitiateAuthResponse authResponse = cognitoService.initiateAuth(request.getEmail(), request.getPassword());
-            
-            // Check if there's a challenge (e.g., NEW_PASSWORD_REQUIRED)
-            if (authResponse.challengeName() != null) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                String challengeName = authResponse.challengeName().toString();
-                if ("NEW_PASSWORD_REQUIRED".equals(challengeName)) {
-                    errorResponse.put("error", "New password required. Please set a new password.");
-                    errorResponse.put("challenge", challengeName);
-                } else {
-                    errorResponse.put("error", "Authentication challenge: " + challengeName);
-                    errorResponse.put("challenge", challengeName);
-                }
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
-            
-            AuthenticationResultType authResult = authResponse.authenticationResult();
-
-            // Extract sub from ID token (more reliable than AdminGetUser)
-            String cognitoSub = null;
-            try {
-                // Decode ID token to get sub
-                com.auth0.jwt.interfaces.DecodedJWT jwt = com.auth0.jwt.JWT.decode(authResult.idToken());
-                cognitoSub = jwt.getSubject();
-            } catch (Exception e) {
-                // Fallback to AdminGetUser
-                cognitoSub = cognitoService.getUserSub(request.getEmail());
-            }
-            
-            // Make cognitoSub effectively final for lambda usage
-            final String finalCognitoSub = cognitoSub;
-
-            // Get or create user in database
-            User user = userRepository.findByEmail(request.getEmail())
-                    .orElseGet(() -> {
-                        User newUser = new User();
-                        newUser.setEmail(request.getEmail());
-                        newUser.setCognitoSub(finalCognitoSub);
-                        return userRepository.save(newUser);
-                    });
-
-            // Update cognitoSub if it's missing or incorrect
-            if (cognitoSub != null && !cognitoSub.equals(user.getCognitoSub())) {
-                user.setCognitoSub(cognitoSub);
-                userRepository.save(user);
-            }
+            return CompletableFuture.completedFuture(com.auth0.jwt.JWT.decode(authResult.idToken()).getSubject());
+        } catch (Exception e) {
+            // Fallback to AdminGetUser
+            return cognitoService.getUserSubAsync(request.getEmail());
+        }
+    }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("accessToken", authResult.accessToken());
-            response.put("idToken", authResult.idToken());
-            response.put("refreshToken", authResult.refreshToken());
-            response.put("user", Map.of(
-                    "id", user.getId(),
-                    "email", user.getEmail()
-            ));
-            
-            return ResponseEntity.ok(response);
-        } catch (software.amazon.awssdk.services.cognitoidentityprovider.model.NotAuthorizedException e) {
+    private ResponseEntity<Map<String, Object>> challengeResponse(InitiateAuthResponse authResponse) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        String challengeName = authResponse.challengeName().toString();
+        if ("NEW_PASSWORD_REQUIRED".equals(challengeName)) {
+            errorResponse.put("error", "New password required. Please set a new password.");
+            errorResponse.put("challenge", challengeName);
+        } else {
+            errorResponse.put("error", "Authentication challenge: " + challengeName);
+            errorResponse.put("challenge", challengeName);
+        }
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+    }
+
+    private ResponseEntity<Map<String, Object>> loggedInResponse(CognitoLoginRequest request, AuthenticationResultType authResult,
+                                                                 String cognitoSub) {
+        // Get or create user in database
+        User user = userRepository.findByEmail(request.getEmail())
+                .orElseGet(() -> {
+                    User newUser = new User();
+                    newUser.setEmail(request.getEmail());
+                    newUser.setCognitoSub(cognitoSub);
+                    return userRepository.save(newUser);
+                });
+
+        // Update cognitoSub if it's missing or incorrect
+        if (cognitoSub != null && !cognitoSub.equals(user.getCognitoSub())) {
+            user.setCognitoSub(cognitoSub);
+            userRepository.save(user);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("accessToken", authResult.accessToken());
+        response.put("idToken", authResult.idToken());
+        response.put("refreshToken", authResult.refreshToken());
+        response.put("user", Map.of(
+                "id", user.getId(),
+                "email", user.getEmail()
+        ));
+
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<Map<String, Object>> loginErrorResponse(Throwable e) {
+        ResponseEntity<Map<String, Object>> unavailable = unavailableResponse(e);
+        if (unavailable != null) {
+            return unavailable;
+        }
+        Map<String, Object> errorResponse = new HashMap<>();
+        if (e instanceof NotAuthorizedException) {
             System.err.println("NotAuthorizedException: " + e.getMessage());
-            Map<String, Object> errorResponse = new HashMap<>();
             String errorMessage = e.getMessage();
             if (errorMessage != null && errorMessage.contains("Incorrect username or password")) {
                 errorResponse.put("error", "Incorrect email or password");
@@ -189,37 +226,58 @@ public class AuthController {
                 errorResponse.put("error", "Authentication failed: " + errorMessage);
             }
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-        } catch (software.amazon.awssdk.services.cognitoidentityprovider.model.UserNotFoundException e) {
+        }
+        if (e instanceof UserNotFoundException) {
             System.err.println("UserNotFoundException: " + e.getMessage());
-            Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "User not found. Please check your email address.");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-        } catch (software.amazon.awssdk.services.cognitoidentityprovider.model.UserNotConfirmedException e) {
+        }
+        if (e instanceof UserNotConfirmedException) {
             System.err.println("UserNotConfirmedException: " + e.getMessage());
-            Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Email not verified. Please verify your email address.");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-        } catch (IllegalStateException e) {
+        }
+        if (e instanceof IllegalStateException) {
             // Configuration errors from CognitoService
             System.err.println("Cognito configuration error: " + e.getMessage());
             e.printStackTrace();
-            Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
-        } catch (Exception e) {
-            System.err.println("Error logging in user: " + e.getMessage());
-            System.err.println("Exception type: " + e.getClass().getName());
-            e.printStackTrace();
-            Map<String, Object> errorResponse = new HashMap<>();
-            String errorMessage = e.getMessage();
-            // Provide more user-friendly error messages
-            if (errorMessage != null && errorMessage.contains("validation")) {
-                errorResponse.put("error", "Authentication failed. Please check that your Cognito app client has USER_PASSWORD_AUTH enabled. See COGNITO_TROUBLESHOOTING.md for details.");
-            } else {
-                errorResponse.put("error", "Login failed: " + errorMessage);
-            }
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
         }
+        System.err.println("Error logging in user: " + e.getMessage());
+        System.err.println("Exception type: " + e.getClass().getName());
+        e.printStackTrace();
+        String errorMessage = e.getMessage();
+        // Provide more user-friendly error messages
+        if (errorMessage != null && errorMessage.contains("validation")) {
+            errorResponse.put("error", "Authentication failed. Please check that your Cognito app client has USER_PASSWORD_AUTH enabled. See COGNITO_TROUBLESHOOTING.md for details.");
+        } else {
+            errorResponse.put("error", "Login failed: " + errorMessage);
+        }
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+    }
+
+    // 503 when the flow's bulkhead or the database executor is full, 504 when Cognito didn't answer in time; null for other errors
+    private static ResponseEntity<Map<String, Object>> unavailableResponse(Throwable e) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        if (e instanceof RejectedExecutionException) {
+            System.err.println("Auth request rejected: " + e.getMessage());
+            errorResponse.put("error", "Too many requests in progress. Please try again shortly.");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+        }
+        if (e instanceof TimeoutException || e instanceof ApiCallTimeoutException) {
+            System.err.println("Auth request timed out: " + e.getMessage());
+            errorResponse.put("error", "The identity provider did not respond in time. Please try again.");
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(errorResponse);
+        }
+        return null;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
     }
 
     @PostMapping("/resend-code")
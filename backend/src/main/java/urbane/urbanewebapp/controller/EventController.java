@@ -2,21 +2,36 @@ package urbane.urbanewebapp.controller;
 
 import jakarta.validation.constraints.Null;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import urbane.urbanewebapp.dto.request.CreateEventRequestDTO;
 import urbane.urbanewebapp.model.Event;
 import urbane.urbanewebapp.model.User;
 import urbane.urbanewebapp.repository.EventRepository;
+import urbane.urbanewebapp.repository.UserEventRepository;
 import urbane.urbanewebapp.repository.UserRepository;
+import urbane.urbanewebapp.service.EventCacheService;
+import urbane.urbanewebapp.service.EventCursor;
+import urbane.urbanewebapp.service.EventExportService;
+import urbane.urbanewebapp.service.EventGeoIndexService;
+import urbane.urbanewebapp.service.HotEventGate;
+import urbane.urbanewebapp.service.NearbyCursor;
 
 import javax.swing.plaf.nimbus.State;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 public class EventController {
@@ -27,20 +42,162 @@ public class EventController {
     @Autowired
     UserRepository userRepository;
 
-    // Get all events
+    @Autowired
+    UserEventRepository userEventRepository;
+
+    @Autowired
+    EventGeoIndexService eventGeoIndexService;
+
+    @Autowired
+    EventExportService eventExportService;
+
+    @Autowired
+    EventCacheService eventCacheService;
+
+    @Autowired
+    HotEventGate hotEventGate;
+
+    static final double DEFAULT_NEAR_RADIUS_KM = 25;
+    static final double MAX_NEAR_RADIUS_KM = 500;
+    static final int DEFAULT_PAGE_LIMIT = 20;
+    static final int MAX_PAGE_LIMIT = 100;
+
+    /**
+     * One page of events in id order, optionally filtered by state, city, date range (ISO dates, both inclusive)
+     * and remaining capacity. With a userId, each event also says whether that user has joined it. The cursor for the next page is returned in the X-Next-Cursor header.
+     */
     @GetMapping("/getAllEvents")
-    public ResponseEntity<List<Map<String, Object>>> getAllEvents() {
-        List<Event> allEvents = eventRepository.findAll();
+    public ResponseEntity<List<Map<String, Object>>> getAllEvents(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String state,
+            @RequestParam(required = false) String city,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
+            @RequestParam(defaultValue = "false") boolean hasCapacity,
+            @RequestParam(required = false) Long userId) {
+        int pageSize = limit == null ? DEFAULT_PAGE_LIMIT : Math.min(Math.max(limit, 1), MAX_PAGE_LIMIT);
+        EventCursor after;
+        try {
+            after = cursor == null || cursor.isEmpty() ? null : EventCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // One extra row tells whether another page exists
+        List<Event> events = eventCacheService.findPage(new EventCacheService.PageKey(
+                after == null ? 0L : after.id(),
+                pageSize + 1,
+                state == null || state.isBlank() ? null : state.trim(),
+                city == null || city.isBlank() ? null : city.trim(),
+                dateFrom == null ? null : dateFrom.toString(),
+                dateTo == null ? null : dateTo.plusDays(1).toString(),
+                hasCapacity));
+        boolean hasMore = events.size() > pageSize;
+
         List<Map<String, Object>> eventsData = new ArrayList<>();
-        
-        for (Event event : allEvents) {
+        for (Event event : events.subList(0, Math.min(events.size(), pageSize))) {
+            eventsData.add(buildEventMap(event));
+        }
+        putAttendeeCounts(eventsData);
+        putJoined(eventsData, userId);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (hasMore) {
+            response.header("X-Next-Cursor", new EventCursor(events.get(pageSize - 1).getId()).encode());
+        }
+        return response.body(eventsData);
+    }
+
+    /**
+     * The whole event catalogue as NDJSON (application/x-ndjson), one event per line, for bulk consumers.
+     * Events are written as they are read from the database, so the response never sits in memory.
+     */
+    @GetMapping(value = "/events/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportEvents() {
+        StreamingResponseBody body = out -> {
+            try {
+                eventExportService.writeNdjson(out);
+            } catch (Exception e) {
+                System.err.println("Error exporting events: " + e.getMessage());
+                e.printStackTrace();
+                throw e;
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * Events within radiusKm of (lat, lon), nearest first, one page at a time.
+     * Each event carries its distanceKm; the cursor for the next page is returned in the X-Next-Cursor header.
+     */
+    @GetMapping("/events/near")
+    public ResponseEntity<List<Map<String, Object>>> getEventsNear(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(required = false) Double radiusKm,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Long userId) {
+        if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            return ResponseEntity.badRequest().build();
+        }
+        double radius = radiusKm == null ? DEFAULT_NEAR_RADIUS_KM : Math.min(Math.max(radiusKm, 0), MAX_NEAR_RADIUS_KM);
+        int pageSize = limit == null ? DEFAULT_PAGE_LIMIT : Math.min(Math.max(limit, 1), MAX_PAGE_LIMIT);
+        NearbyCursor after;
+        try {
+            after = cursor == null || cursor.isEmpty() ? null : NearbyCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        EventGeoIndexService.NearbyPage page = eventGeoIndexService.findNear(lat, lon, radius, pageSize, after);
+        Map<Long, Event> events = eventRepository.findWithCreatorByIdIn(
+                        page.events().stream().map(EventGeoIndexService.NearbyEvent::eventId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Event::getId, Function.identity()));
+
+        List<Map<String, Object>> eventsData = new ArrayList<>();
+        for (EventGeoIndexService.NearbyEvent nearby : page.events()) {
+            Event event = events.get(nearby.eventId());
+            if (event == null) continue; // deleted by another instance since the last rebuild
             Map<String, Object> eventData = buildEventMap(event);
+            eventData.put("distanceKm", nearby.distanceKm());
             eventsData.add(eventData);
         }
-        
-        return ResponseEntity.ok(eventsData);
+        putAttendeeCounts(eventsData);
+        putJoined(eventsData, userId);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header("X-Next-Cursor", page.nextCursor().encode());
+        }
+        return response.body(eventsData);
     }
-    
+
+    // Adds each listed event's current attendeeCount, read for the whole page in one query (cached events may be older)
+    private void putAttendeeCounts(List<Map<String, Object>> eventsData) {
+        List<Long> eventIds = eventsData.stream().map(eventData -> (Long) eventData.get("id")).collect(Collectors.toList());
+        Map<Long, Long> counts = eventRepository.attendeeCountsByIds(eventIds);
+        for (Map<String, Object> eventData : eventsData) {
+            eventData.put("attendeeCount", counts.getOrDefault((Long) eventData.get("id"), 0L));
+        }
+    }
+
+    // With a userId, adds whether that user has joined each listed event, read for the whole page in one query
+    private void putJoined(List<Map<String, Object>> eventsData, Long userId) {
+        if (userId == null || eventsData.isEmpty()) {
+            return;
+        }
+        List<Long> eventIds = eventsData.stream().map(eventData -> (Long) eventData.get("id")).collect(Collectors.toList());
+        Set<Long> joined = new HashSet<>(userEventRepository.findRsvpedEventIds(userId, eventIds));
+        for (Map<String, Object> eventData : eventsData) {
+            eventData.put("joined", joined.contains((Long) eventData.get("id")));
+        }
+    }
+
     // Helper method to build event map without circular references
     private Map<String, Object> buildEventMap(Event event) {
         Map<String, Object> eventData = new HashMap<>();
@@ -124,6 +281,8 @@ public class EventController {
             }
             
             Event savedEvent = eventRepository.save(event);
+            eventGeoIndexService.put(savedEvent.getId(), savedEvent.getLatitude(), savedEvent.getLongitude());
+            eventCacheService.evict(savedEvent);
             Map<String, Object> eventData = buildEventMap(savedEvent);
             return ResponseEntity.ok(eventData);
         } catch (Exception e) {
@@ -135,26 +294,32 @@ public class EventController {
     }
 
     @GetMapping("/getEventByState/{state}")
-    public ResponseEntity<List<Map<String, Object>>> getEventByState(@PathVariable String state) {
-        List<Event> savedEvents = eventRepository.findEventsByState(state);
+    public ResponseEntity<List<Map<String, Object>>> getEventByState(@PathVariable String state,
+                                                                     @RequestParam(required = false) Long userId) {
+        List<Event> savedEvents = eventCacheService.findByState(state);
         List<Map<String, Object>> eventsData = new ArrayList<>();
         
         for (Event event : savedEvents) {
             eventsData.add(buildEventMap(event));
         }
+        putAttendeeCounts(eventsData);
+        putJoined(eventsData, userId);
         
         return ResponseEntity.ok(eventsData);
     }
     
     //get event by city and state
     @GetMapping("/getEventByStateCity/{state}/{city}")
-    public ResponseEntity<List<Map<String, Object>>> getEventByStateCity(@PathVariable String state, @PathVariable String city) {
-        List<Event> existingEvents = eventRepository.findEventsByStateAndCity(state, city);
+    public ResponseEntity<List<Map<String, Object>>> getEventByStateCity(@PathVariable String state, @PathVariable String city,
+                                                                         @RequestParam(required = false) Long userId) {
+        List<Event> existingEvents = eventCacheService.findByStateAndCity(state, city);
         List<Map<String, Object>> eventsData = new ArrayList<>();
         
         for (Event event : existingEvents) {
             eventsData.add(buildEventMap(event));
         }
+        putAttendeeCounts(eventsData);
+        putJoined(eventsData, userId);
         
         return ResponseEntity.ok(eventsData);
     }
@@ -162,7 +327,7 @@ public class EventController {
     //fetch event by id
     @GetMapping("/getEventById/{id}")
     public ResponseEntity<Map<String, Object>> getEventById(@PathVariable Long id) {
-        Event existingEvent = eventRepository.findById(id).orElse(null);
+        Event existingEvent = eventCacheService.findById(id);
         if (existingEvent == null) {
             return ResponseEntity.notFound().build();
         }
@@ -176,6 +341,13 @@ public class EventController {
         if (existingEvent == null) {
             return ResponseEntity.notFound().build();
         }
+        // The cached lists the event belonged to before the change also need evicting
+        Event previous = new Event();
+        previous.setId(existingEvent.getId());
+        previous.setState(existingEvent.getState());
+        previous.setCity(existingEvent.getCity());
+        previous.setDate(existingEvent.getDate());
+
         existingEvent.setDescription(event.getDescription());
         existingEvent.setState(event.getState());
         existingEvent.setCity(event.getCity());
@@ -185,10 +357,33 @@ public class EventController {
         existingEvent.setLongitude(event.getLongitude());
         existingEvent.setTitle(event.getTitle());
         eventRepository.save(existingEvent);
+        eventGeoIndexService.put(existingEvent.getId(), existingEvent.getLatitude(), existingEvent.getLongitude());
+        eventCacheService.evict(previous);
+        eventCacheService.evict(existingEvent);
         return ResponseEntity.ok(existingEvent);
     }
 
 
+    /**
+     * Hot mode for an event about to get a burst of joins: seats are handed out from memory and RSVPs written
+     * in batches (see HotEventGate). DELETE returns the event to normal joins.
+     */
+    @PostMapping("/events/{id}/hot")
+    public ResponseEntity<HttpStatus> activateHotMode(@PathVariable long id) {
+        Event event = eventRepository.findById(id).orElse(null);
+        if (event == null) {
+            return ResponseEntity.notFound().build();
+        }
+        hotEventGate.activate(event);
+        return ResponseEntity.ok(HttpStatus.OK);
+    }
+
+    @DeleteMapping("/events/{id}/hot")
+    public ResponseEntity<HttpStatus> deactivateHotMode(@PathVariable long id) {
+        hotEventGate.deactivate(id);
+        return ResponseEntity.ok(HttpStatus.OK);
+    }
+
     //delete event
     @DeleteMapping("/deleteEvent/{id}")
     public ResponseEntity<HttpStatus> deleteEvent(@PathVariable long id) {
@@ -196,7 +391,10 @@ public class EventController {
         if (event == null) {
             return ResponseEntity.badRequest().build();
         }
+        hotEventGate.deactivate(id);
         eventRepository.deleteById(id);
+        eventGeoIndexService.remove(id);
+        eventCacheService.evict(event);
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
@@ -1,12 +1,14 @@
 package urbane.urbanewebapp.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import urbane.urbanewebapp.model.Interest;
 import urbane.urbanewebapp.model.User;
 import urbane.urbanewebapp.repository.InterestRepository;
 import urbane.urbanewebapp.repository.UserRepository;
+import urbane.urbanewebapp.service.MatchProfileChangedEvent;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -22,6 +24,9 @@ public class InterestController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Get all interests
     @GetMapping("/getAllInterests")
     public ResponseEntity<List<Map<String, Object>>> getAllInterests() {
@@ -58,7 +63,9 @@ public class InterestController {
         }
 
         user.setInterests(interests);
-        return ResponseEntity.ok(userRepository.save(user));
+        User savedUser = userRepository.save(user);
+        eventPublisher.publishEvent(new MatchProfileChangedEvent(userId));
+        return ResponseEntity.ok(savedUser);
     }
 
     // Get user's interests (simple endpoint without circular references)
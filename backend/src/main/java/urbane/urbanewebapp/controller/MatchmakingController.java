@@ -1,11 +1,18 @@
 package urbane.urbanewebapp.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import urbane.urbanewebapp.model.*;
 import urbane.urbanewebapp.repository.*;
+import urbane.urbanewebapp.service.GeoCellIndex;
+import urbane.urbanewebapp.service.MatchCandidateService;
+import urbane.urbanewebapp.service.MatchCursor;
+import urbane.urbanewebapp.service.MatchProfile;
+import urbane.urbanewebapp.service.MatchmakingIndexService;
+import urbane.urbanewebapp.service.MatchmakingSnapshot;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -13,6 +20,10 @@ import java.util.stream.Collectors;
 @RestController
 public class MatchmakingController {
 
+    static final int DEFAULT_MATCH_LIMIT = 20;
+    static final int MAX_MATCH_LIMIT = 100;
+    static final double MAX_RADIUS_KM = 500;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -25,14 +36,43 @@ public class MatchmakingController {
     @Autowired
     private InterestRepository interestRepository;
 
+    @Autowired
+    private MatchmakingIndexService matchmakingIndexService;
+
+    @Autowired
+    private MatchCandidateService matchCandidateService;
+
     /**
      * Get potential matches for a user based on similarities
-     * Returns users with at least 1 similarity (interests, age range, location)
+     * Returns the highest scoring users with at least 1 similarity (interests, age range, location),
+     * one page at a time. The cursor for the next page is returned in the X-Next-Cursor header.
+     * Users within radiusKm (default 50) count as nearby even in a different city.
+     * Served from the precomputed match_candidates lists unless a custom radiusKm is requested.
+     * mode=approximate ranks LSH candidates (similar interests, languages, travel style) from the live index.
      */
     @GetMapping("/matchmaking/potential-matches/{userId}")
-    public ResponseEntity<List<Map<String, Object>>> getPotentialMatches(@PathVariable Long userId) {
+    public ResponseEntity<List<Map<String, Object>>> getPotentialMatches(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Double radiusKm,
+            @RequestParam(required = false) String mode) {
         try {
-            User currentUser = userRepository.findById(userId).orElse(null);
+            boolean approximate = "approximate".equalsIgnoreCase(mode);
+            if (mode != null && !approximate && !"exact".equalsIgnoreCase(mode)) {
+                return ResponseEntity.badRequest().build();
+            }
+            int pageSize = limit == null ? DEFAULT_MATCH_LIMIT : Math.min(Math.max(limit, 1), MAX_MATCH_LIMIT);
+            double radius = radiusKm == null ? MatchmakingSnapshot.DEFAULT_RADIUS_KM : Math.min(Math.max(radiusKm, 0), MAX_RADIUS_KM);
+            MatchCursor after;
+            try {
+                after = cursor == null || cursor.isEmpty() ? null : MatchCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            // Load the current user with interests eagerly fetched
+            User currentUser = userRepository.findByIdWithInterests(userId).orElse(null);
             if (currentUser == null) {
                 return ResponseEntity.notFound().build();
             }
@@ -42,51 +82,35 @@ public class MatchmakingController {
                 return ResponseEntity.ok(Collections.emptyList());
             }
 
-            // Get all users except current user (with interests eagerly fetched)
-            List<User> allUsers = userRepository.findAllWithInterests().stream()
-                    .filter(user -> !user.getId().equals(userId))
-                    .filter(user -> user.getProfile() != null)
-                    .collect(Collectors.toList());
-            
-            // Also ensure current user has interests loaded
-            User currentUserWithInterests = userRepository.findAllWithInterests().stream()
-                    .filter(user -> user.getId().equals(userId))
-                    .findFirst()
-                    .orElse(null);
-            
-            if (currentUserWithInterests != null) {
-                currentUser = currentUserWithInterests;
-            }
-
-            // Get existing connections (to exclude users appropriately)
-            List<FriendConnection> existingConnections = friendConnectionRepository.findAllConnectionsForUser(userId);
-            // Exclude logic:
-            // 1. Always exclude ACCEPTED (matched) and REJECTED users
-            // 2. For PENDING: Only exclude if current user is the requester (they initiated, so don't show them again)
-            //    If current user is the receiver, they should still see the requester (so they can respond)
-            Set<Long> excludedUserIds = existingConnections.stream()
-                    .filter(fc -> {
-                        // Always exclude ACCEPTED and REJECTED
-                        if (fc.getStatus() == FriendConnection.ConnectionStatus.ACCEPTED || 
-                            fc.getStatus() == FriendConnection.ConnectionStatus.REJECTED) {
-                            return true;
-                        }
-                        // For PENDING: only exclude if current user is the requester
-                        // (if current user is receiver, they should still see the requester to respond)
-                        if (fc.getStatus() == FriendConnection.ConnectionStatus.PENDING) {
-                            return fc.getRequester().getId().equals(userId);
-                        }
-                        return false;
-                    })
-                    .map(fc -> {
-                        if (fc.getRequester().getId().equals(userId)) {
-                            return fc.getReceiver().getId();
-                        } else {
-                            return fc.getRequester().getId();
-                        }
-                    })
+            // Users to exclude (accepted/rejected connections and requests this user already sent),
+            // resolved in SQL rather than by loading every connection
+            Set<Long> excludedUserIds = userRepository.findExcludedMatchUserIds(userId).stream()
+                    .map(Number::longValue)
                     .collect(Collectors.toSet());
 
+            // Rank candidates from the precomputed lists or the in-memory index; only the selected page is loaded from the database
+            MatchProfile currentMatchProfile = MatchProfile.from(currentUser);
+            MatchmakingSnapshot.MatchPage page;
+            if (approximate) {
+                page = matchmakingIndexService.findApproximateTopMatches(currentMatchProfile, excludedUserIds, pageSize, after, radius);
+            } else if (matchCandidateService.isEnabled() && radiusKm == null) {
+                page = matchCandidateService.findPage(currentMatchProfile, pageSize, after);
+            } else {
+                page = matchmakingIndexService.findTopMatches(currentMatchProfile, excludedUserIds, pageSize, after, radius);
+            }
+            Map<Long, Integer> scores = new LinkedHashMap<>();
+            for (MatchmakingSnapshot.ScoredMatch match : page.matches()) {
+                scores.put(match.userId(), match.score());
+            }
+            Map<Long, User> loadedUsers = scores.isEmpty()
+                    ? Collections.emptyMap()
+                    : userRepository.findAllWithInterestsByIdIn(scores.keySet()).stream()
+                            .collect(Collectors.toMap(User::getId, user -> user));
+            List<User> allUsers = scores.keySet().stream()
+                    .map(loadedUsers::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
             // Get current user's interests
             Set<Long> currentUserInterestIds = currentUser.getInterests().stream()
                     .map(Interest::getId)
@@ -134,10 +158,18 @@ public class MatchmakingController {
                 if (currentProfile.getLocation() != null && profile.getLocation() != null) {
                     Location currentLoc = currentProfile.getLocation();
                     Location userLoc = profile.getLocation();
+                    MatchProfile userMatchProfile = MatchProfile.from(user);
+                    Double distanceKm = currentMatchProfile.hasCoordinates() && userMatchProfile.hasCoordinates()
+                            ? GeoCellIndex.distanceKm(currentMatchProfile.latitude(), currentMatchProfile.longitude(),
+                                                      userMatchProfile.latitude(), userMatchProfile.longitude())
+                            : null;
                     if (currentLoc.getCity() != null && userLoc.getCity() != null &&
                         currentLoc.getCity().equalsIgnoreCase(userLoc.getCity())) {
                         hasSimilarity = true;
                         similarities.add("Same city: " + userLoc.getCity());
+                    } else if (distanceKm != null && distanceKm <= radius) {
+                        hasSimilarity = true;
+                        similarities.add("Nearby: " + Math.round(distanceKm) + " km away");
                     } else if (currentLoc.getState() != null && userLoc.getState() != null &&
                                currentLoc.getState().equalsIgnoreCase(userLoc.getState())) {
                         hasSimilarity = true;
@@ -228,10 +260,16 @@ public class MatchmakingController {
                             .collect(Collectors.toList());
                     matchData.put("interests", interestsData);
                     matchData.put("similarities", similarities);
+                    matchData.put("score", scores.get(user.getId()));
                     potentialMatches.add(matchData);
                 }
             }
 
+            if (page.nextCursor() != null) {
+                return ResponseEntity.ok()
+                        .header("X-Next-Cursor", page.nextCursor().encode())
+                        .body(potentialMatches);
+            }
             return ResponseEntity.ok(potentialMatches);
         } catch (Exception e) {
             System.err.println("Error finding potential matches: " + e.getMessage());
@@ -317,79 +355,45 @@ public class MatchmakingController {
                 return ResponseEntity.badRequest().build();
             }
 
-            User requester = userRepository.findById(requesterId).orElse(null);
-            User receiver = userRepository.findById(receiverId).orElse(null);
-
-            if (requester == null || receiver == null) {
+            // One upsert on the (min id, max id) unique index: insert PENDING, or accept the other user's request
+            List<Object[]> rows;
+            try {
+                rows = friendConnectionRepository.upsertFriendRequest(requesterId, receiverId);
+            } catch (DataIntegrityViolationException e) {
+                // Foreign key violation: one of the users does not exist
                 return ResponseEntity.notFound().build();
             }
-
-            // Check if connection already exists
-            Optional<FriendConnection> existingConnection = 
-                friendConnectionRepository.findConnectionBetweenUsers(requesterId, receiverId);
-
-            if (existingConnection.isPresent()) {
-                FriendConnection connection = existingConnection.get();
-                if (connection.getStatus() == FriendConnection.ConnectionStatus.ACCEPTED) {
+            Object[] row = rows.get(0);
+            Long connectionId = ((Number) row[0]).longValue();
+            String status = (String) row[1];
+            String previousStatus = (String) row[2];
+            boolean inserted = (Boolean) row[3];
+
+            if (inserted) {
+                return ResponseEntity.ok(Map.of(
+                    "message", "Friend request sent successfully",
+                    "status", "PENDING",
+                    "isMatch", false,
+                    "connectionId", connectionId
+                ));
+            } else if ("ACCEPTED".equals(status)) {
+                if ("ACCEPTED".equals(previousStatus)) {
                     return ResponseEntity.ok(Map.of("message", "Already friends", "status", "ACCEPTED", "isMatch", true));
-                } else if (connection.getStatus() == FriendConnection.ConnectionStatus.PENDING) {
-                    // Check if this is a mutual match (other user already sent a request)
-                    // If requester is the receiver in the existing connection, it means the other user sent first
-                    if (connection.getReceiver().getId().equals(requesterId)) {
-                        // Mutual match! Both users clicked yes
-                        connection.setStatus(FriendConnection.ConnectionStatus.ACCEPTED);
-                        friendConnectionRepository.save(connection);
-                        return ResponseEntity.ok(Map.of(
-                            "message", "It's a match! You're now friends!",
-                            "status", "ACCEPTED",
-                            "isMatch", true,
-                            "connectionId", connection.getId()
-                        ));
-                    } else {
-                        // This user already sent a request
-                        return ResponseEntity.ok(Map.of("message", "Friend request already pending", "status", "PENDING", "isMatch", false));
-                    }
-                } else if (connection.getStatus() == FriendConnection.ConnectionStatus.REJECTED) {
-                    // Can't send request if already rejected
-                    return ResponseEntity.badRequest().body(Map.of("message", "Cannot send request to a user who was previously rejected", "status", "REJECTED"));
-                }
-            }
-
-            // Check if there's a pending request from the other direction (mutual match scenario)
-            // This handles the case where receiver already sent a request to requester
-            Optional<FriendConnection> reverseConnection = 
-                friendConnectionRepository.findConnectionBetweenUsers(receiverId, requesterId);
-            
-            if (reverseConnection.isPresent()) {
-                FriendConnection connection = reverseConnection.get();
-                if (connection.getStatus() == FriendConnection.ConnectionStatus.PENDING && 
-                    connection.getRequester().getId().equals(receiverId)) {
-                    // Mutual match! Both users clicked yes
-                    connection.setStatus(FriendConnection.ConnectionStatus.ACCEPTED);
-                    friendConnectionRepository.save(connection);
-                    return ResponseEntity.ok(Map.of(
-                        "message", "It's a match! You're now friends!",
-                        "status", "ACCEPTED",
-                        "isMatch", true,
-                        "connectionId", connection.getId()
-                    ));
                 }
+                // Mutual match! Both users clicked yes
+                return ResponseEntity.ok(Map.of(
+                    "message", "It's a match! You're now friends!",
+                    "status", "ACCEPTED",
+                    "isMatch", true,
+                    "connectionId", connectionId
+                ));
+            } else if ("REJECTED".equals(status)) {
+                // Can't send request if already rejected
+                return ResponseEntity.badRequest().body(Map.of("message", "Cannot send request to a user who was previously rejected", "status", "REJECTED"));
+            } else {
+                // This user already sent a request
+                return ResponseEntity.ok(Map.of("message", "Friend request already pending", "status", "PENDING", "isMatch", false));
             }
-
-            // Create new friend request
-            FriendConnection friendRequest = new FriendConnection();
-            friendRequest.setRequester(requester);
-            friendRequest.setReceiver(receiver);
-            friendRequest.setStatus(FriendConnection.ConnectionStatus.PENDING);
-
-            friendConnectionRepository.save(friendRequest);
-
-            return ResponseEntity.ok(Map.of(
-                "message", "Friend request sent successfully",
-                "status", "PENDING",
-                "isMatch", false,
-                "connectionId", friendRequest.getId()
-            ));
         } catch (Exception e) {
             System.err.println("Error sending friend request: " + e.getMessage());
             e.printStackTrace();
@@ -411,32 +415,18 @@ public class MatchmakingController {
                 return ResponseEntity.badRequest().build();
             }
 
-            // Check if connection exists
-            Optional<FriendConnection> existingConnection = 
-                friendConnectionRepository.findConnectionBetweenUsers(requesterId, receiverId);
-
-            if (existingConnection.isPresent()) {
-                FriendConnection connection = existingConnection.get();
-                connection.setStatus(FriendConnection.ConnectionStatus.REJECTED);
-                friendConnectionRepository.save(connection);
-                return ResponseEntity.ok(Map.of("message", "Friend request rejected", "status", "REJECTED"));
-            } else {
-                // Create a rejected connection to remember this decision
-                User requester = userRepository.findById(requesterId).orElse(null);
-                User receiver = userRepository.findById(receiverId).orElse(null);
-
-                if (requester == null || receiver == null) {
-                    return ResponseEntity.notFound().build();
-                }
-
-                FriendConnection rejectedConnection = new FriendConnection();
-                rejectedConnection.setRequester(requester);
-                rejectedConnection.setReceiver(receiver);
-                rejectedConnection.setStatus(FriendConnection.ConnectionStatus.REJECTED);
-                friendConnectionRepository.save(rejectedConnection);
-
+            // One upsert on the (min id, max id) unique index; a new row remembers the skip
+            List<Object[]> rows;
+            try {
+                rows = friendConnectionRepository.upsertRejection(requesterId, receiverId);
+            } catch (DataIntegrityViolationException e) {
+                return ResponseEntity.notFound().build();
+            }
+            boolean inserted = (Boolean) rows.get(0)[1];
+            if (inserted) {
                 return ResponseEntity.ok(Map.of("message", "User skipped", "status", "REJECTED"));
             }
+            return ResponseEntity.ok(Map.of("message", "Friend request rejected", "status", "REJECTED"));
         } catch (Exception e) {
             System.err.println("Error rejecting friend request: " + e.getMessage());
             e.printStackTrace();
@@ -451,35 +441,22 @@ public class MatchmakingController {
     public ResponseEntity<List<Map<String, Object>>> getFriends(@PathVariable Long userId) {
         try {
             // Get current user with interests loaded
-            User currentUser = userRepository.findAllWithInterests().stream()
-                    .filter(user -> user.getId().equals(userId))
-                    .findFirst()
-                    .orElse(null);
+            User currentUser = userRepository.findByIdWithInterests(userId).orElse(null);
             
             if (currentUser == null || currentUser.getProfile() == null) {
                 return ResponseEntity.notFound().build();
             }
 
             Profile currentProfile = currentUser.getProfile();
-            List<FriendConnection> acceptedConnections = 
-                friendConnectionRepository.findAcceptedConnectionsForUser(userId);
+            // All accepted friends with profile, location and interests in one query
+            List<User> acceptedFriends = userRepository.findAcceptedFriendsWithInterests(userId);
 
             List<Map<String, Object>> friends = new ArrayList<>();
             Set<Long> currentUserInterestIds = currentUser.getInterests().stream()
                     .map(Interest::getId)
                     .collect(Collectors.toSet());
 
-            for (FriendConnection connection : acceptedConnections) {
-                User friend = connection.getRequester().getId().equals(userId) 
-                    ? connection.getReceiver() 
-                    : connection.getRequester();
-
-                // Eagerly load friend's interests
-                User friendWithInterests = userRepository.findAllWithInterests().stream()
-                        .filter(u -> u.getId().equals(friend.getId()))
-                        .findFirst()
-                        .orElse(friend);
-
+            for (User friendWithInterests : acceptedFriends) {
                 Map<String, Object> friendData = new HashMap<>();
                 friendData.put("userId", friendWithInterests.getId());
                 friendData.put("email", friendWithInterests.getEmail());
@@ -525,16 +502,12 @@ public class MatchmakingController {
                 if (friendWithInterests.getProfile() != null) {
                     Profile friendProfile = friendWithInterests.getProfile();
                     
-                    // Shared interests
-                    Set<Long> friendInterestIds = friendWithInterests.getInterests().stream()
-                            .map(Interest::getId)
-                            .collect(Collectors.toSet());
-                    friendInterestIds.retainAll(currentUserInterestIds);
-                    if (!friendInterestIds.isEmpty()) {
-                        List<String> sharedInterestNames = friendWithInterests.getInterests().stream()
-                                .filter(interest -> friendInterestIds.contains(interest.getId()))
-                                .map(Interest::getName)
-                                .collect(Collectors.toList());
+                    // Shared interests, in one pass over the friend's interests
+                    List<String> sharedInterestNames = friendWithInterests.getInterests().stream()
+                            .filter(interest -> currentUserInterestIds.contains(interest.getId()))
+                            .map(Interest::getName)
+                            .collect(Collectors.toList());
+                    if (!sharedInterestNames.isEmpty()) {
                         similarities.add("Shared interests: " + String.join(", ", sharedInterestNames));
                     }
                     
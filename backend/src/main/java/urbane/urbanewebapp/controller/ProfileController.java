@@ -3,6 +3,7 @@ package urbane.urbanewebapp.controller;
 
 import jakarta.persistence.Id;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -12,6 +13,7 @@ import urbane.urbanewebapp.model.Interest;
 import urbane.urbanewebapp.repository.ProfileRepository;
 import urbane.urbanewebapp.repository.UserRepository;
 import urbane.urbanewebapp.repository.InterestRepository;
+import urbane.urbanewebapp.service.MatchProfileChangedEvent;
 
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +32,9 @@ public class ProfileController {
     @Autowired
     private InterestRepository interestRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     //fetch profile
 
     @GetMapping("/fetchProfile/{id}")
@@ -75,6 +80,7 @@ public class ProfileController {
             existingProfile.setPhoto(profile.getPhoto());
             existingProfile.setBio(profile.getBio());
             profileRepository.save(existingProfile);
+            eventPublisher.publishEvent(new MatchProfileChangedEvent(id));
         }
         return ResponseEntity.ok(existingProfile);
     }
@@ -87,6 +93,7 @@ public class ProfileController {
             return ResponseEntity.notFound().build();
         } else {
             profileRepository.deleteById(id);
+            eventPublisher.publishEvent(new MatchProfileChangedEvent(id));
         }
         return ResponseEntity.ok(HttpStatus.OK);
     }
@@ -113,6 +120,7 @@ public class ProfileController {
                 existingProfile.setTravelStyle(profile.getTravelStyle());
                 existingProfile.setLanguages(profile.getLanguages());
                 Profile savedProfile = profileRepository.save(existingProfile);
+                eventPublisher.publishEvent(new MatchProfileChangedEvent(userId));
                 return ResponseEntity.ok(savedProfile);
             } else {
                 // Create new profile
@@ -120,6 +128,7 @@ public class ProfileController {
                 Profile savedProfile = profileRepository.save(profile);
                 user.setProfile(savedProfile);
                 userRepository.save(user);
+                eventPublisher.publishEvent(new MatchProfileChangedEvent(userId));
                 return ResponseEntity.ok(savedProfile);
             }
         } catch (Exception e) {
@@ -190,6 +199,7 @@ public class ProfileController {
                 user.setInterests(interests);
                 userRepository.save(user);
             }
+            eventPublisher.publishEvent(new MatchProfileChangedEvent(userId));
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Profile updated successfully");
@@ -12,12 +12,16 @@ import urbane.urbanewebapp.model.Event;
 import urbane.urbanewebapp.model.Profile;
 import urbane.urbanewebapp.model.User;
 import urbane.urbanewebapp.model.UserEvent;
-import urbane.urbanewebapp.model.UserEventId;
 import urbane.urbanewebapp.repository.EventRepository;
 import urbane.urbanewebapp.repository.UserEventRepository;
 import urbane.urbanewebapp.repository.UserRepository;
+import urbane.urbanewebapp.repository.WaitlistEntryRepository;
+import urbane.urbanewebapp.service.EventCacheService;
+import urbane.urbanewebapp.service.HotEventGate;
+import urbane.urbanewebapp.service.RsvpService;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -37,6 +41,20 @@ public class UserEventController {
     @Autowired
     ModelMapper modelMapper;
 
+    @Autowired
+    EventCacheService eventCacheService;
+
+    @Autowired
+    RsvpService rsvpService;
+
+    @Autowired
+    HotEventGate hotEventGate;
+
+    @Autowired
+    WaitlistEntryRepository waitlistEntryRepository;
+
+    static final int MAX_BULK_EVENT_IDS = 500;
+
 
 
     //logic user joins an event
@@ -44,6 +62,22 @@ public class UserEventController {
     @PostMapping("/JoinUserEvent")
     public ResponseEntity<UserEventDTO> joinUserEvent(@RequestBody JoinUserEventRequestDTO request) {
         try {
+            // Hot events are admitted from memory; only a user not seen before costs a lookup
+            if (hotEventGate.isHot(request.getEventId()) && !hotEventGate.isKnownUser(request.getUserId())) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            RsvpService.JoinOutcome hotOutcome = hotEventGate.tryJoin(request.getUserId(), request.getEventId());
+            if (hotOutcome != null) {
+                if (hotOutcome == RsvpService.JoinOutcome.ALREADY_JOINED) {
+                    return ResponseEntity.badRequest().build(); // User already joined
+                }
+                if (hotOutcome == RsvpService.JoinOutcome.FULL) {
+                    // Hot events have no waitlist, so a full one refuses the join
+                    return ResponseEntity.status(HttpStatus.CONFLICT).build();
+                }
+                return ResponseEntity.ok(joinedDTO(request.getUserId(), hotEventGate.hotEvent(request.getEventId())));
+            }
+
             User user = userRepository.findById(request.getUserId()).orElse(null);
             if (user == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -55,35 +89,26 @@ public class UserEventController {
             }
 
 
-        long count = userEventRepository.countByRsvpStatusTrueAndEventId(event.getId());
-
-        // Check capacity only if it's set (not null/unlimited)
-        if (event.getCapacity() != null && count >= event.getCapacity()) {
-            return ResponseEntity.badRequest().build();
-        }
-
-        // Check if user already joined this event
-        UserEventId userEventId = new UserEventId(user.getId(), event.getId());
-        if (userEventRepository.existsById(userEventId)) {
+        // Capacity and duplicate joins are enforced atomically by the database
+        RsvpService.JoinOutcome outcome = rsvpService.join(user.getId(), event.getId());
+        if (outcome == RsvpService.JoinOutcome.ALREADY_JOINED) {
             return ResponseEntity.badRequest().build(); // User already joined
         }
-
-        // join event if not at capacity
-        UserEvent userEvent = new UserEvent();
-        userEvent.setId(userEventId);
-        userEvent.setUser(user);
-        userEvent.setEvent(event);
-        userEvent.setRsvpStatus(true);
-        UserEvent savedUserEvent = userEventRepository.save(userEvent);
-
-        UserEventDTO userEventDTO = modelMapper.map(savedUserEvent, UserEventDTO.class);
-
-        userEventDTO.setUserId(savedUserEvent.getUser().getId());
-        userEventDTO.setEventId(savedUserEvent.getEvent().getId());
-        userEventDTO.setRsvpStatus(savedUserEvent.isRsvpStatus());
+        if (outcome == RsvpService.JoinOutcome.FULL) {
+            // Full events put the user on the waitlist (202 with their position) instead of refusing the join
+            long position = rsvpService.joinWaitlist(user.getId(), event.getId());
+            eventCacheService.evictForRsvp(event);
+            if (position > 0) {
+                UserEventDTO waitlistedDTO = joinedDTO(user.getId(), event);
+                waitlistedDTO.setRsvpStatus(false);
+                waitlistedDTO.setWaitlistPosition(position);
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(waitlistedDTO);
+            }
+        }
+        eventCacheService.evictForRsvp(event);
 
 
-        return ResponseEntity.ok(userEventDTO);
+        return ResponseEntity.ok(joinedDTO(user.getId(), event));
         } catch (Exception e) {
             System.err.println("Error joining event: " + e.getMessage());
             e.printStackTrace();
@@ -91,6 +116,19 @@ public class UserEventController {
         }
     }
 
+    private UserEventDTO joinedDTO(long userId, Event event) {
+        UserEventDTO userEventDTO = new UserEventDTO();
+        userEventDTO.setUserId(userId);
+        userEventDTO.setEventId(event.getId());
+        userEventDTO.setRsvpStatus(true);
+        userEventDTO.setTitle(event.getTitle());
+        userEventDTO.setDescription(event.getDescription());
+        userEventDTO.setCity(event.getCity());
+        userEventDTO.setCountry(event.getCountry());
+        userEventDTO.setState(event.getState());
+        return userEventDTO;
+    }
+
     @GetMapping("/getAllUsersAttending/{event_id}")
     public ResponseEntity<List<Map<String, Object>>> getAllUsersAttending(@PathVariable("event_id") long eventId) {
 
@@ -149,17 +187,62 @@ public class UserEventController {
         User user = userRepository.findById(userId).orElseThrow();
         Event event = eventRepository.findById(eventId).orElseThrow();
 
-        userEventRepository.deleteUserEventByUserIdAndEventId(userId, eventId);
+        boolean hot = hotEventGate.isHot(eventId);
+        if (hot) {
+            hotEventGate.flush(); // the RSVP may still be queued
+        }
+        // Hot events hand freed seats back to the gate rather than to the waitlist
+        if (rsvpService.withdraw(userId, eventId, !hot) && hot) {
+            hotEventGate.releaseSeat(userId, eventId);
+        }
+        eventCacheService.evictForRsvp(event);
         return ResponseEntity.ok(HttpStatus.OK);
 
     }
 
+    // position of a user on an event's waitlist (1 = next to be promoted); 404 when they are not waiting
+    @GetMapping("/getWaitlistPosition/{user_id}/{event_id}")
+    public ResponseEntity<Map<String, Object>> getWaitlistPosition(@PathVariable("user_id") long userId, @PathVariable("event_id") long eventId) {
+        long position = waitlistEntryRepository.findPosition(userId, eventId);
+        if (position == 0) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("userId", userId);
+        response.put("eventId", eventId);
+        response.put("waitlistPosition", position);
+        response.put("waitlistSize", waitlistEntryRepository.countByEventId(eventId));
+        return ResponseEntity.ok(response);
+    }
+
+    // which of several events the user has joined, as a sorted id list, e.g. /getRsvpStatuses/7?eventIds=1,2,3
+    @GetMapping("/getRsvpStatuses/{user_id}")
+    public ResponseEntity<List<Long>> getRsvpStatuses(@PathVariable("user_id") long userId, @RequestParam List<Long> eventIds) {
+        if (eventIds.size() > MAX_BULK_EVENT_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (eventIds.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+        List<Long> joined = userEventRepository.findRsvpedEventIds(userId, new HashSet<>(eventIds));
+        joined.sort(null);
+        return ResponseEntity.ok(joined);
+    }
+
+    // attendee counts of several events at once, e.g. /getAttendeesCounts?eventIds=1,2,3
+    @GetMapping("/getAttendeesCounts")
+    public ResponseEntity<Map<Long, Long>> countAttendeesBulk(@RequestParam List<Long> eventIds) {
+        if (eventIds.size() > MAX_BULK_EVENT_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(eventRepository.attendeeCountsByIds(new HashSet<>(eventIds)));
+    }
+
     //get attendees count
     @GetMapping("/getAttendees/{event_id}")
     public ResponseEntity<Long> countAttendees(@PathVariable("event_id") long eventId) {
         Event event = eventRepository.findById(eventId).orElseThrow();
-        long count = userEventRepository.countByRsvpStatusTrueAndEventId(eventId);
-        return ResponseEntity.ok(count);
+        return ResponseEntity.ok(event.getAttendeeCount());
     }
 
 
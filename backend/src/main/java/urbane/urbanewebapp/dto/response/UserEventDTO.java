@@ -7,6 +7,8 @@ public class UserEventDTO {
     public long userId;
     public long eventId;
     public boolean rsvpStatus;
+    // Set when the event was full and the user was put on its waitlist
+    public Long waitlistPosition;
 
 
 
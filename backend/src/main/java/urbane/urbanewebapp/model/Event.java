@@ -42,6 +42,11 @@ public class Event {
 
     private Long capacity;
 
+    // RSVPs with rsvp_status = true, kept in step by atomic UPDATEs on join/withdraw (never by entity saves)
+    @Column(name = "attendee_count", nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private long attendeeCount;
+
 
 
     private String date;
@@ -0,0 +1,44 @@
+package urbane.urbanewebapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One precomputed potential match: candidate for user, written by the matchmaking batch job
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "match_candidates",
+        uniqueConstraints = @UniqueConstraint(name = "uq_match_candidates_user_candidate", columnNames = {"user_id", "candidate_id"}),
+        indexes = @Index(name = "idx_match_candidates_user_rank", columnList = "user_id, score DESC, candidate_id"))
+public class MatchCandidate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "match_candidate_id")
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "candidate_id", nullable = false)
+    private Long candidateId;
+
+    @Column(nullable = false)
+    private Integer score;
+
+    // Comma-separated MatchReason codes, e.g. "SHARED_INTERESTS,SAME_CITY"
+    @Column(length = 200)
+    private String reasons;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+}
@@ -0,0 +1,29 @@
+package urbane.urbanewebapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marks a user's match_candidates list as computed, even when it came out empty; dropped with the list
+ * when the user's profile changes
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "match_candidate_runs")
+public class MatchCandidateRun {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+}
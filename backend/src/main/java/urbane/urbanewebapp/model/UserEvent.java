@@ -11,7 +11,7 @@ import lombok.Setter;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "user_events")
+@Table(name = "user_events", indexes = @Index(name = "idx_user_events_event", columnList = "event_id, rsvp_status"))
 public class UserEvent {
 
     @EmbeddedId
@@ -0,0 +1,37 @@
+package urbane.urbanewebapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A user waiting for a seat at a full event; the id orders the waitlist (first in, first promoted)
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "event_waitlist",
+        uniqueConstraints = @UniqueConstraint(name = "uq_event_waitlist_event_user", columnNames = {"event_id", "user_id"}),
+        indexes = @Index(name = "idx_event_waitlist_event_order", columnList = "event_id, waitlist_id"))
+public class WaitlistEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "waitlist_id")
+    private Long id;
+
+    @Column(name = "event_id", nullable = false)
+    private Long eventId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
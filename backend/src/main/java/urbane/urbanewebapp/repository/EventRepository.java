@@ -1,14 +1,130 @@
 package urbane.urbanewebapp.repository;
 
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import urbane.urbanewebapp.model.Event;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface EventRepository extends JpaRepository<Event, Long> {
-
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
+public interface EventRepository extends JpaRepository<Event, Long> {
 
+    // Listing reads fetch the creator, profile and location that buildEventMap walks in the same select
+    @EntityGraph(attributePaths = {"creator", "creator.profile", "creator.profile.location"})
     List<Event> findEventsByState(String state);
+
+    @EntityGraph(attributePaths = {"creator", "creator.profile", "creator.profile.location"})
     List<Event> findEventsByStateAndCity(String state, String city);
+
+    @EntityGraph(attributePaths = {"creator", "creator.profile", "creator.profile.location"})
+    Optional<Event> findWithCreatorById(Long id);
+
+    @EntityGraph(attributePaths = {"creator", "creator.profile", "creator.profile.location"})
+    List<Event> findWithCreatorByIdIn(Collection<Long> ids);
+
+    // (event_id, attendee_count) of the given events
+    @Query("SELECT e.id, e.attendeeCount FROM Event e WHERE e.id IN :ids")
+    List<Object[]> findAttendeeCounts(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Attendee count of every given id, read from the events.attendee_count column; 0 for unknown ids
+     */
+    default Map<Long, Long> attendeeCountsByIds(Collection<Long> ids) {
+        Map<Long, Long> counts = new HashMap<>();
+        if (ids.isEmpty()) {
+            return counts;
+        }
+        for (Long id : ids) {
+            counts.put(id, 0L);
+        }
+        for (Object[] row : findAttendeeCounts(ids)) {
+            counts.put((Long) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    /**
+     * Takes one seat if the event has no capacity or a free seat; returns 0 when it is full.
+     * The check and the increment are one statement, so concurrent joins cannot oversubscribe the event.
+     */
+    @Modifying
+    @Query(value = "UPDATE events SET attendee_count = attendee_count + 1 " +
+            "WHERE event_id = :id AND (capacity IS NULL OR attendee_count < capacity)", nativeQuery = true)
+    int reserveSeat(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "UPDATE events SET attendee_count = attendee_count - 1 WHERE event_id = :id AND attendee_count > 0",
+            nativeQuery = true)
+    int decrementAttendeeCount(@Param("id") Long id);
+
+    // Ids of events whose attendee_count differs from the RSVPs in user_events; unlocked, so only candidates for repair
+    @Query(value = "SELECT event_id FROM events WHERE attendee_count <> (SELECT COUNT(*) FROM user_events ue " +
+            "WHERE ue.event_id = events.event_id AND ue.rsvp_status = true)", nativeQuery = true)
+    List<Long> findDriftedAttendeeCountIds();
+
+    // Row lock on the event, held until the transaction ends; joins and withdrawals wait on it
+    @Query(value = "SELECT event_id FROM events WHERE event_id = :id FOR UPDATE", nativeQuery = true)
+    Long lockById(@Param("id") Long id);
+
+    /**
+     * Resets the event's attendee_count to its RSVPs in user_events; returns 1 if it was repaired.
+     * Call it after {@link #lockById} in the same transaction, so the count can't miss an RSVP committed
+     * by a join that had already moved the counter.
+     */
+    @Modifying
+    @Query(value = "UPDATE events SET attendee_count = (SELECT COUNT(*) FROM user_events ue " +
+            "WHERE ue.event_id = events.event_id AND ue.rsvp_status = true) " +
+            "WHERE event_id = :id AND attendee_count <> (SELECT COUNT(*) FROM user_events ue " +
+            "WHERE ue.event_id = events.event_id AND ue.rsvp_status = true)", nativeQuery = true)
+    int reconcileAttendeeCount(@Param("id") Long id);
+
+    // (id, latitude, longitude) of every event with coordinates, used to build the geo index
+    @Query("SELECT e.id, e.latitude, e.longitude FROM Event e WHERE e.latitude IS NOT NULL AND e.longitude IS NOT NULL")
+    List<Object[]> findAllCoordinates();
+
+    /**
+     * Keyset page of events after {@code afterId}, in event_id order. Null filters are ignored;
+     * dates are ISO strings ("yyyy-MM-ddTHH:mm"), so the range compares them as text.
+     * hasCapacity keeps events without a capacity or whose attendee_count is below it.
+     */
+    @EntityGraph(attributePaths = {"creator", "creator.profile", "creator.profile.location"})
+    @Query("SELECT e FROM Event e WHERE e.id > :afterId " +
+            "AND (:state IS NULL OR LOWER(e.state) = LOWER(:state)) " +
+            "AND (:city IS NULL OR LOWER(e.city) = LOWER(:city)) " +
+            "AND (:dateFrom IS NULL OR e.date >= :dateFrom) " +
+            "AND (:dateBefore IS NULL OR e.date < :dateBefore) " +
+            "AND (:hasCapacity = false OR e.capacity IS NULL OR e.capacity > e.attendeeCount) " +
+            "ORDER BY e.id")
+    List<Event> findPage(@Param("afterId") long afterId,
+                         @Param("state") String state,
+                         @Param("city") String city,
+                         @Param("dateFrom") String dateFrom,
+                         @Param("dateBefore") String dateBefore,
+                         @Param("hasCapacity") boolean hasCapacity,
+                         Pageable pageable);
+
+    /**
+     * Every event with its creator, profile and location joined in, read through a server-side cursor
+     * in batches of the fetch size. Must be consumed inside a transaction and closed.
+     */
+    @Query("SELECT e FROM Event e LEFT JOIN FETCH e.creator c LEFT JOIN FETCH c.profile p " +
+            "LEFT JOIN FETCH p.location ORDER BY e.id")
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    Stream<Event> streamAllWithCreator();
 }
@@ -3,6 +3,7 @@ package urbane.urbanewebapp.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import urbane.urbanewebapp.model.FriendConnection;
 import urbane.urbanewebapp.model.User;
 
@@ -27,6 +28,43 @@ public interface FriendConnectionRepository extends JpaRepository<FriendConnecti
            "fc.receiver.id = :userId AND fc.status = 'PENDING'")
     List<FriendConnection> findPendingRequestsForUser(@Param("userId") Long userId);
     
+    /**
+     * Send (or accept) a friend request as one statement on the unordered-pair unique index:
+     * inserts PENDING, or turns the other user's PENDING request into ACCEPTED; any other
+     * existing row is left as is. Returns one row:
+     * (connection_id, status, previous_status, inserted), where previous_status is null for a new
+     * row or one created concurrently.
+     */
+    @Transactional
+    @Query(value = "WITH previous AS (" +
+            "  SELECT status FROM friend_connections " +
+            "  WHERE LEAST(requester_id, receiver_id) = LEAST(:requesterId, :receiverId) " +
+            "  AND GREATEST(requester_id, receiver_id) = GREATEST(:requesterId, :receiverId)" +
+            "), upserted AS (" +
+            "  INSERT INTO friend_connections (requester_id, receiver_id, status) " +
+            "  VALUES (:requesterId, :receiverId, 'PENDING') " +
+            "  ON CONFLICT (LEAST(requester_id, receiver_id), GREATEST(requester_id, receiver_id)) DO UPDATE " +
+            "  SET status = CASE WHEN friend_connections.status = 'PENDING' AND friend_connections.requester_id = EXCLUDED.receiver_id " +
+            "                    THEN 'ACCEPTED' ELSE friend_connections.status END " +
+            "  RETURNING connection_id, status, (xmax = 0) AS inserted" +
+            ") " +
+            "SELECT u.connection_id, u.status, (SELECT status FROM previous) AS previous_status, u.inserted FROM upserted u",
+            nativeQuery = true)
+    List<Object[]> upsertFriendRequest(@Param("requesterId") Long requesterId, @Param("receiverId") Long receiverId);
+
+    /**
+     * Reject (or skip) as one upsert on the unordered-pair unique index: the pair's row becomes
+     * REJECTED whatever its previous state. Returns (connection_id, inserted).
+     */
+    @Transactional
+    @Query(value = "INSERT INTO friend_connections (requester_id, receiver_id, status) " +
+            "VALUES (:requesterId, :receiverId, 'REJECTED') " +
+            "ON CONFLICT (LEAST(requester_id, receiver_id), GREATEST(requester_id, receiver_id)) DO UPDATE " +
+            "SET status = 'REJECTED' " +
+            "RETURNING connection_id, (xmax = 0) AS inserted",
+            nativeQuery = true)
+    List<Object[]> upsertRejection(@Param("requesterId") Long requesterId, @Param("receiverId") Long receiverId);
+
     // Find accepted connections for a user
     @Query("SELECT fc FROM FriendConnection fc WHERE " +
            "((fc.requester.id = :userId OR fc.receiver.id = :userId) AND fc.status = 'ACCEPTED')")
@@ -0,0 +1,24 @@
+package urbane.urbanewebapp.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import urbane.urbanewebapp.model.MatchCandidate;
+
+import java.util.List;
+
+public interface MatchCandidateRepository extends JpaRepository<MatchCandidate, Long> {
+
+    // One page of a user's precomputed matches after (score, candidateId), minus connections made since the run
+    @Query(value = "SELECT * FROM match_candidates mc " +
+            "WHERE mc.user_id = :userId " +
+            "AND (mc.score < :score OR (mc.score = :score AND mc.candidate_id > :candidateId)) " +
+            "AND mc.candidate_id NOT IN (" + UserRepository.EXCLUDED_MATCH_USER_IDS + ") " +
+            "ORDER BY mc.score DESC, mc.candidate_id " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<MatchCandidate> findPageForUser(@Param("userId") Long userId,
+                                         @Param("score") int score,
+                                         @Param("candidateId") long candidateId,
+                                         @Param("limit") int limit);
+}
@@ -0,0 +1,7 @@
+package urbane.urbanewebapp.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import urbane.urbanewebapp.model.MatchCandidateRun;
+
+public interface MatchCandidateRunRepository extends JpaRepository<MatchCandidateRun, Long> {
+}
@@ -1,12 +1,38 @@
 package urbane.urbanewebapp.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import urbane.urbanewebapp.model.Profile;
 
 import javax.swing.text.html.Option;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface ProfileRepository extends JpaRepository<Profile, Long> {
 
+    // (userId, age, travelStyle, languages, city, state, country, latitude, longitude) for every profile, used by the matchmaking index
+    @Query("SELECT p.id, p.age, p.travelStyle, p.languages, l.city, l.state, l.country, l.latitude, l.longitude " +
+           "FROM Profile p LEFT JOIN p.location l")
+    List<Object[]> findAllMatchmakingRows();
 
+    // Same row for a single user; empty if the user has no profile
+    @Query("SELECT p.id, p.age, p.travelStyle, p.languages, l.city, l.state, l.country, l.latitude, l.longitude " +
+           "FROM Profile p LEFT JOIN p.location l WHERE p.id = :userId")
+    List<Object[]> findMatchmakingRow(@Param("userId") Long userId);
+
+    // Same rows for a set of users (the SQL-prefiltered matchmaking candidates)
+    @Query("SELECT p.id, p.age, p.travelStyle, p.languages, l.city, l.state, l.country, l.latitude, l.longitude " +
+           "FROM Profile p LEFT JOIN p.location l WHERE p.id IN :userIds")
+    List<Object[]> findMatchmakingRowsByIdIn(@Param("userIds") Collection<Long> userIds);
+
+    // Same rows for one user id range of the matchmaking batch job
+    @Query("SELECT p.id, p.age, p.travelStyle, p.languages, l.city, l.state, l.country, l.latitude, l.longitude " +
+           "FROM Profile p LEFT JOIN p.location l WHERE p.id BETWEEN :fromUserId AND :toUserId")
+    List<Object[]> findMatchmakingRowsByIdBetween(@Param("fromUserId") Long fromUserId, @Param("toUserId") Long toUserId);
+
+    // (min user id, max user id) over all profiles, as a single row
+    @Query("SELECT MIN(p.id), MAX(p.id) FROM Profile p")
+    List<Object[]> findUserIdRange();
 }
@@ -1,9 +1,13 @@
 package urbane.urbanewebapp.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import urbane.urbanewebapp.model.UserEvent;
 import urbane.urbanewebapp.model.UserEventId;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface UserEventRepository extends JpaRepository<UserEvent, UserEventId> {
@@ -12,4 +16,23 @@ public interface UserEventRepository extends JpaRepository<UserEvent, UserEventI
     Long countByRsvpStatusTrueAndEventId(Long eventId);
     void deleteUserEventByUserIdAndEventId(Long userId, Long eventId);
 
+    @Query("SELECT ue.user.id FROM UserEvent ue WHERE ue.event.id = :eventId AND ue.rsvpStatus = true")
+    List<Long> findAttendeeIds(@Param("eventId") Long eventId);
+
+    // Which of the given events the user is attending; reads only the user_events primary key
+    @Query("SELECT ue.id.eventId FROM UserEvent ue WHERE ue.id.userId = :userId AND ue.id.eventId IN :eventIds " +
+            "AND ue.rsvpStatus = true")
+    List<Long> findRsvpedEventIds(@Param("userId") Long userId, @Param("eventIds") Collection<Long> eventIds);
+
+    // Returns 0 if the user already has a row for the event
+    @Modifying
+    @Query(value = "INSERT INTO user_events (user_id, event_id, rsvp_status) VALUES (:userId, :eventId, true) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertRsvpIfAbsent(@Param("userId") Long userId, @Param("eventId") Long eventId);
+
+    // Removes the user's RSVP; returns 1 if they were attending, so the caller can decrement the event's counter
+    @Modifying
+    @Query("DELETE FROM UserEvent ue WHERE ue.user.id = :userId AND ue.event.id = :eventId AND ue.rsvpStatus = true")
+    int deleteRsvp(@Param("userId") Long userId, @Param("eventId") Long eventId);
+
 }
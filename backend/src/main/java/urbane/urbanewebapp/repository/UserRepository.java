@@ -3,12 +3,23 @@ package urbane.urbanewebapp.repository;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import urbane.urbanewebapp.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
+
+    // Users hidden from a user's potential matches: ACCEPTED and REJECTED connections either way,
+    // and PENDING requests the user sent (requests they received stay visible so they can respond)
+    String EXCLUDED_MATCH_USER_IDS =
+            "SELECT CASE WHEN fc.requester_id = :userId THEN fc.receiver_id ELSE fc.requester_id END " +
+            "FROM friend_connections fc " +
+            "WHERE (fc.requester_id = :userId OR fc.receiver_id = :userId) " +
+            "AND (fc.status IN ('ACCEPTED', 'REJECTED') OR (fc.status = 'PENDING' AND fc.requester_id = :userId))";
+
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
     Optional<User> findByCognitoSub(String cognitoSub);
@@ -17,4 +28,87 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @EntityGraph(attributePaths = {"interests", "profile", "profile.location"})
     @Query("SELECT u FROM User u")
     List<User> findAllWithInterests();
+
+    // Same eager fetch plan, restricted to a single user
+    @EntityGraph(attributePaths = {"interests", "profile", "profile.location"})
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> findByIdWithInterests(@Param("id") Long id);
+
+    // Same eager fetch plan, restricted to the given users
+    @EntityGraph(attributePaths = {"interests", "profile", "profile.location"})
+    @Query("SELECT u FROM User u WHERE u.id IN :ids")
+    List<User> findAllWithInterestsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Accepted friends of a user (either side of the connection) with the same eager fetch plan
+    @EntityGraph(attributePaths = {"interests", "profile", "profile.location"})
+    @Query("SELECT u FROM User u WHERE " +
+           "u.id IN (SELECT fc.receiver.id FROM FriendConnection fc WHERE fc.requester.id = :userId AND fc.status = 'ACCEPTED') OR " +
+           "u.id IN (SELECT fc.requester.id FROM FriendConnection fc WHERE fc.receiver.id = :userId AND fc.status = 'ACCEPTED')")
+    List<User> findAcceptedFriendsWithInterests(@Param("userId") Long userId);
+
+    // Raw (user_id, interest_id) rows of the join table, used to build the matchmaking index
+    @Query(value = "SELECT user_id, interest_id FROM user_interests", nativeQuery = true)
+    List<Object[]> findAllUserInterestPairs();
+
+    @Query(value = "SELECT interest_id FROM user_interests WHERE user_id = :userId", nativeQuery = true)
+    List<Number> findInterestIdsByUserId(@Param("userId") Long userId);
+
+    @Query(value = "SELECT user_id, interest_id FROM user_interests WHERE user_id IN :userIds", nativeQuery = true)
+    List<Object[]> findUserInterestPairsByUserIdIn(@Param("userIds") Collection<Long> userIds);
+
+    @Query(value = "SELECT user_id, interest_id FROM user_interests WHERE user_id BETWEEN :fromUserId AND :toUserId", nativeQuery = true)
+    List<Object[]> findUserInterestPairsByUserIdBetween(@Param("fromUserId") Long fromUserId, @Param("toUserId") Long toUserId);
+
+    @Query(value = EXCLUDED_MATCH_USER_IDS, nativeQuery = true)
+    List<Number> findExcludedMatchUserIds(@Param("userId") Long userId);
+
+    // (user id, excluded user id) for every user in the range; same rule as EXCLUDED_MATCH_USER_IDS
+    @Query(value = "SELECT fc.requester_id, fc.receiver_id FROM friend_connections fc " +
+            "WHERE fc.requester_id BETWEEN :fromUserId AND :toUserId AND fc.status IN ('ACCEPTED', 'REJECTED', 'PENDING') " +
+            "UNION ALL " +
+            "SELECT fc.receiver_id, fc.requester_id FROM friend_connections fc " +
+            "WHERE fc.receiver_id BETWEEN :fromUserId AND :toUserId AND fc.status IN ('ACCEPTED', 'REJECTED')",
+            nativeQuery = true)
+    List<Object[]> findExcludedMatchPairsByUserIdBetween(@Param("fromUserId") Long fromUserId, @Param("toUserId") Long toUserId);
+
+    /**
+     * Candidate prefilter for matchmaking: (candidate user id, shared interest count) for every
+     * profiled user who shares an interest with the given user, lives in the same city, state or
+     * country, or is within 5 years of age, minus the excluded connections above.
+     * Ranked by an approximation of the scorer's weights (10 per shared interest, 6 for similar age,
+     * 8/4/2 for the most specific shared city/state/country; see MatchmakingSnapshot) before being capped
+     * at :maxCandidates rows, so the cap drops the weakest candidates rather than everyone without a shared interest.
+     */
+    @Query(value = "WITH me AS (" +
+            "  SELECT p.age, LOWER(TRIM(l.city)) AS city, LOWER(TRIM(l.state)) AS state, LOWER(TRIM(l.country)) AS country " +
+            "  FROM profiles p LEFT JOIN locations l ON l.location_id = p.location_id WHERE p.user_id = :userId" +
+            "), overlap AS (" +
+            "  SELECT theirs.user_id, COUNT(*) AS shared_interests " +
+            "  FROM user_interests mine JOIN user_interests theirs ON theirs.interest_id = mine.interest_id " +
+            "  WHERE mine.user_id = :userId AND theirs.user_id <> :userId " +
+            "  GROUP BY theirs.user_id" +
+            "), candidates AS (" +
+            "  SELECT user_id FROM overlap " +
+            "  UNION " +
+            "  SELECT p.user_id FROM profiles p LEFT JOIN locations l ON l.location_id = p.location_id CROSS JOIN me " +
+            "  WHERE p.user_id <> :userId AND (" +
+            "    p.age BETWEEN me.age - 5 AND me.age + 5 " +
+            "    OR LOWER(TRIM(l.city)) = me.city OR LOWER(TRIM(l.state)) = me.state OR LOWER(TRIM(l.country)) = me.country)" +
+            ") " +
+            "SELECT c.user_id, COALESCE(o.shared_interests, 0) AS shared_interests " +
+            "FROM candidates c " +
+            "JOIN profiles p ON p.user_id = c.user_id " +
+            "LEFT JOIN locations l ON l.location_id = p.location_id " +
+            "LEFT JOIN overlap o ON o.user_id = c.user_id " +
+            "CROSS JOIN me " +
+            "WHERE c.user_id NOT IN (" + EXCLUDED_MATCH_USER_IDS + ") " +
+            "ORDER BY COALESCE(o.shared_interests, 0) * 10 " +
+            "  + CASE WHEN p.age BETWEEN me.age - 5 AND me.age + 5 THEN 6 ELSE 0 END " +
+            "  + CASE WHEN LOWER(TRIM(l.city)) = me.city THEN 8 " +
+            "         WHEN LOWER(TRIM(l.state)) = me.state THEN 4 " +
+            "         WHEN LOWER(TRIM(l.country)) = me.country THEN 2 ELSE 0 END DESC, " +
+            "  c.user_id " +
+            "LIMIT :maxCandidates",
+            nativeQuery = true)
+    List<Object[]> findMatchCandidates(@Param("userId") Long userId, @Param("maxCandidates") int maxCandidates);
 }
@@ -0,0 +1,39 @@
+package urbane.urbanewebapp.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import urbane.urbanewebapp.model.WaitlistEntry;
+
+import java.util.List;
+
+public interface WaitlistEntryRepository extends JpaRepository<WaitlistEntry, Long> {
+
+    // Returns 0 if the user is already waiting for the event
+    @Modifying
+    @Query(value = "INSERT INTO event_waitlist (event_id, user_id, created_at) VALUES (:eventId, :userId, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId, @Param("eventId") Long eventId);
+
+    // The first waiting entry, locked so concurrent withdrawals promote different users
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM WaitlistEntry w WHERE w.eventId = :eventId ORDER BY w.id")
+    List<WaitlistEntry> findHeadForUpdate(@Param("eventId") Long eventId, Pageable pageable);
+
+    /**
+     * 1-based position of the user in the event's waitlist, 0 when not waiting
+     */
+    @Query("SELECT COUNT(w) FROM WaitlistEntry w WHERE w.eventId = :eventId AND w.id <= " +
+            "(SELECT mine.id FROM WaitlistEntry mine WHERE mine.eventId = :eventId AND mine.userId = :userId)")
+    long findPosition(@Param("userId") Long userId, @Param("eventId") Long eventId);
+
+    long countByEventId(Long eventId);
+
+    @Modifying
+    @Query("DELETE FROM WaitlistEntry w WHERE w.eventId = :eventId AND w.userId = :userId")
+    int deleteEntry(@Param("userId") Long userId, @Param("eventId") Long eventId);
+}
@@ -0,0 +1,107 @@
+package urbane.urbanewebapp.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead and timeout for each auth flow (login, register, confirm). A flow admits at most
+ * max-concurrent calls at once and rejects the rest straight away, so a burst of signups can't
+ * starve logins; a call that outlives timeout-ms fails with a TimeoutException. The permit is held
+ * until the underlying call really finishes, so timed-out calls still count against the bulkhead.
+ *
+ * The database work that follows a Cognito call runs on a small pool of its own (databaseExecutor), not
+ * on the SDK's completion threads; when its queue is full the work is rejected like a full bulkhead.
+ */
+@Service
+public class AuthFlowLimiter {
+
+    public static final String LOGIN = "login";
+    public static final String REGISTER = "register";
+    public static final String CONFIRM = "confirm";
+
+    @Value("${auth.flow.login.max-concurrent:100}")
+    private int loginMaxConcurrent;
+
+    @Value("${auth.flow.login.timeout-ms:10000}")
+    private long loginTimeoutMs;
+
+    @Value("${auth.flow.register.max-concurrent:50}")
+    private int registerMaxConcurrent;
+
+    @Value("${auth.flow.register.timeout-ms:10000}")
+    private long registerTimeoutMs;
+
+    @Value("${auth.flow.confirm.max-concurrent:50}")
+    private int confirmMaxConcurrent;
+
+    @Value("${auth.flow.confirm.timeout-ms:10000}")
+    private long confirmTimeoutMs;
+
+    @Value("${auth.db-executor.threads:8}")
+    private int dbExecutorThreads;
+
+    @Value("${auth.db-executor.queue-capacity:200}")
+    private int dbExecutorQueueCapacity;
+
+    private Map<String, Flow> flows;
+    private ThreadPoolExecutor databaseExecutor;
+
+    private record Flow(Semaphore permits, long timeoutMs) {
+    }
+
+    @PostConstruct
+    void initFlows() {
+        flows = Map.of(
+                LOGIN, new Flow(new Semaphore(loginMaxConcurrent), loginTimeoutMs),
+                REGISTER, new Flow(new Semaphore(registerMaxConcurrent), registerTimeoutMs),
+                CONFIRM, new Flow(new Semaphore(confirmMaxConcurrent), confirmTimeoutMs));
+        AtomicInteger threadCount = new AtomicInteger();
+        // A bounded queue with the default abort policy: a full queue throws RejectedExecutionException
+        databaseExecutor = new ThreadPoolExecutor(dbExecutorThreads, dbExecutorThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(dbExecutorQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "auth-db-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    void stopDatabaseExecutor() {
+        databaseExecutor.shutdown();
+    }
+
+    // Runs the blocking JPA calls of the auth flows, e.g. thenApplyAsync(..., databaseExecutor())
+    public Executor databaseExecutor() {
+        return databaseExecutor;
+    }
+
+    public <T> CompletableFuture<T> run(String name, Supplier<CompletableFuture<T>> call) {
+        Flow flow = flows.get(name);
+        if (!flow.permits().tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many concurrent " + name + " requests"));
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            flow.permits().release();
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, error) -> flow.permits().release());
+        // A copy, so the timeout fails the caller's future without cancelling the call holding the permit
+        return future.copy().orTimeout(flow.timeoutMs(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -5,18 +5,41 @@ import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
+import java.security.MessageDigest;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPublicKeySpec;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Verifies Cognito ID and access tokens against the user pool's JWKS.
+ * One JWTVerifier per key id is built from the JWKS and kept until the next refresh, which runs
+ * in the background (cognito.jwks.refresh-interval-ms). A token signed with a key id we don't know
+ * yet (the pool rotated its keys) triggers one refetch, at most every cognito.jwks.min-refetch-interval-ms,
+ * so a flood of tokens with made-up key ids can't turn into a flood of JWKS downloads.
+ *
+ * The claims of verified tokens are cached by the token's SHA-256 until the token expires, so repeat
+ * requests of a session skip the signature check; the cache holds cognito.claims-cache.max-entries tokens.
+ */
 @Service
 public class CognitoJwtService {
 
@@ -26,97 +49,198 @@ public class CognitoJwtService {
     @Value("${cognito.region:us-east-1}")
     private String region;
 
-    private static final String JWK_URL_TEMPLATE = "https://cognito-idp.%s.amazonaws.com/%s/.well-known/jwks.json";
+    // Overrides the JWKS location derived from region and pool id, e.g. for a local stub
+    @Value("${cognito.jwks-url:}")
+    private String jwksUrl;
+
+    @Value("${cognito.jwks.min-refetch-interval-ms:60000}")
+    private long minRefetchIntervalMs;
+
+    @Value("${cognito.jwks.timeout-ms:5000}")
+    private int timeoutMs;
+
+    @Value("${cognito.claims-cache.max-entries:10000}")
+    private long claimsCacheMaxEntries;
+
+    private static final String ISSUER_TEMPLATE = "https://cognito-idp.%s.amazonaws.com/%s";
+    private static final String JWK_URL_TEMPLATE = ISSUER_TEMPLATE + "/.well-known/jwks.json";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Replaced wholesale on every fetch, so readers never need a lock
+    private volatile Map<String, JWTVerifier> verifiers = Map.of();
+    private long lastFetchMillis;
+    // Until a download has succeeded every unknown kid may retry, so a failed first fetch can't lock out all tokens
+    private boolean keysLoaded;
+
+    private Cache<String, VerifiedClaims> claimsCache;
+
+    /**
+     * The claims we read from a verified token
+     */
+    public record VerifiedClaims(String sub, String email, Instant expiresAt) {
+    }
+
+    @PostConstruct
+    void initClaimsCache() {
+        claimsCache = Caffeine.newBuilder()
+                .maximumSize(claimsCacheMaxEntries)
+                .expireAfter(new Expiry<String, VerifiedClaims>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedClaims claims, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, claims.expiresAt().toEpochMilli() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedClaims claims, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, claims, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
 
     public DecodedJWT verifyToken(String token) throws JWTVerificationException {
         try {
             DecodedJWT jwt = JWT.decode(token);
-            String kid = jwt.getKeyId();
-            
-            // For production, you should cache the JWKs
-            // For now, we'll fetch them each time
-            String jwksUrl = String.format(JWK_URL_TEMPLATE, region, userPoolId);
-            Map<String, Object> jwks = fetchJwks(jwksUrl);
-            
-            // Get the public key for this key ID
-            RSAPublicKey publicKey = getPublicKey(jwks, kid);
-            
-            // Verify the token
-            Algorithm algorithm = Algorithm.RSA256(publicKey, null);
-            JWTVerifier verifier = JWT.require(algorithm)
-                    .withIssuer(String.format("https://cognito-idp.%s.amazonaws.com/%s", region, userPoolId))
-                    .build();
-            
-            return verifier.verify(token);
+            JWTVerifier verifier = verifierFor(jwt.getKeyId());
+            if (verifier == null) {
+                throw new Exception("Key ID not found in JWKS");
+            }
+            return verifier.verify(jwt);
         } catch (Exception e) {
             throw new JWTVerificationException("Token verification failed: " + e.getMessage());
         }
     }
 
-    public String getSubFromToken(String token) {
+    /**
+     * Claims of a valid token, from the cache when the token was verified before; null when it doesn't verify
+     */
+    public VerifiedClaims getVerifiedClaims(String token) {
+        String key = sha256(token);
+        VerifiedClaims claims = claimsCache.getIfPresent(key);
+        if (claims != null) {
+            return claims;
+        }
         try {
             DecodedJWT jwt = verifyToken(token);
-            return jwt.getSubject();
+            claims = new VerifiedClaims(jwt.getSubject(), jwt.getClaim("email").asString(),
+                    jwt.getExpiresAtAsInstant());
         } catch (JWTVerificationException e) {
             return null;
         }
+        // Tokens without an expiry are verified every time
+        if (claims.expiresAt() != null) {
+            claimsCache.put(key, claims);
+        }
+        return claims;
+    }
+
+    public String getSubFromToken(String token) {
+        VerifiedClaims claims = getVerifiedClaims(token);
+        return claims == null ? null : claims.sub();
     }
 
     public String getEmailFromToken(String token) {
+        VerifiedClaims claims = getVerifiedClaims(token);
+        return claims == null ? null : claims.email();
+    }
+
+    @Scheduled(fixedDelayString = "${cognito.jwks.refresh-interval-ms:3600000}",
+            initialDelayString = "${cognito.jwks.refresh-interval-ms:3600000}")
+    public void refreshKeys() {
+        if (!isConfigured()) {
+            return;
+        }
         try {
-            DecodedJWT jwt = verifyToken(token);
-            return jwt.getClaim("email").asString();
-        } catch (JWTVerificationException e) {
+            fetchKeys();
+        } catch (Exception e) {
+            // Keep verifying with the keys we have; the next refresh or an unknown kid retries
+            System.err.println("Error refreshing Cognito JWKS: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private JWTVerifier verifierFor(String kid) throws Exception {
+        if (kid == null) {
             return null;
         }
+        JWTVerifier verifier = verifiers.get(kid);
+        if (verifier == null) {
+            verifier = refetchFor(kid);
+        }
+        return verifier;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> fetchJwks(String jwksUrl) throws Exception {
-        URL url = new URL(jwksUrl);
-        java.io.InputStream inputStream = url.openStream();
-        String jwksJson = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-        inputStream.close();
-        
-        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-        return mapper.readValue(jwksJson, Map.class);
+    // Fetches the JWKS for an unknown kid, unless another thread just did or the last attempt was too recent
+    private synchronized JWTVerifier refetchFor(String kid) throws Exception {
+        JWTVerifier verifier = verifiers.get(kid);
+        if (verifier != null || (keysLoaded && System.currentTimeMillis() - lastFetchMillis < minRefetchIntervalMs)) {
+            return verifier;
+        }
+        return fetchKeys().get(kid);
     }
 
-    @SuppressWarnings("unchecked")
-    private RSAPublicKey getPublicKey(Map<String, Object> jwks, String kid) throws Exception {
-        Map<String, Object> keys = (Map<String, Object>) jwks.get("keys");
-        
-        if (keys == null) {
-            throw new Exception("No keys found in JWKS");
+    private synchronized Map<String, JWTVerifier> fetchKeys() throws Exception {
+        lastFetchMillis = System.currentTimeMillis();
+        String issuer = String.format(ISSUER_TEMPLATE, region, userPoolId);
+        Map<String, JWTVerifier> fetched = new HashMap<>();
+        for (Map<String, Object> key : fetchJwks()) {
+            String kid = (String) key.get("kid");
+            if (kid == null || !"RSA".equals(key.get("kty"))) continue;
+            Algorithm algorithm = Algorithm.RSA256(toPublicKey(key), null);
+            fetched.put(kid, JWT.require(algorithm).withIssuer(issuer).build());
         }
-        
-        Map<String, Object> key = null;
-        for (Map.Entry<String, Object> entry : keys.entrySet()) {
-            Map<String, Object> k = (Map<String, Object>) entry.getValue();
-            if (kid.equals(k.get("kid"))) {
-                key = k;
-                break;
-            }
+        verifiers = Map.copyOf(fetched);
+        keysLoaded = true;
+        return verifiers;
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
         }
-        
-        if (key == null) {
-            throw new Exception("Key ID not found in JWKS");
+    }
+
+    private boolean isConfigured() {
+        return !jwksUrl.isEmpty() || !userPoolId.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> fetchJwks() throws Exception {
+        String location = jwksUrl.isEmpty() ? String.format(JWK_URL_TEMPLATE, region, userPoolId) : jwksUrl;
+        URLConnection connection = new URL(location).openConnection();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        try (InputStream inputStream = connection.getInputStream()) {
+            Map<String, Object> jwks = mapper.readValue(inputStream, Map.class);
+            List<Map<String, Object>> keys = (List<Map<String, Object>>) jwks.get("keys");
+            if (keys == null) {
+                throw new Exception("No keys found in JWKS");
+            }
+            return keys;
         }
-        
+    }
+
+    private static RSAPublicKey toPublicKey(Map<String, Object> key) throws Exception {
         // Extract modulus and exponent
         String modulus = (String) key.get("n");
         String exponent = (String) key.get("e");
-        
+
         // Decode base64url to BigInteger
         BigInteger modulusBigInt = new BigInteger(1, Base64.getUrlDecoder().decode(modulus));
         BigInteger exponentBigInt = new BigInteger(1, Base64.getUrlDecoder().decode(exponent));
-        
+
         // Create RSA public key
         RSAPublicKeySpec spec = new RSAPublicKeySpec(modulusBigInt, exponentBigInt);
         KeyFactory keyFactory = KeyFactory.getInstance("RSA");
         return (RSAPublicKey) keyFactory.generatePublic(spec);
     }
 }
-
-
-
@@ -1,15 +1,17 @@
 package urbane.urbanewebapp.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 import software.amazon.awssdk.core.exception.SdkClientException;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class CognitoService {
@@ -20,70 +22,90 @@ public class CognitoService {
     @Value("${cognito.clientId:${COGNITO_CLIENT_ID:}}")
     private String clientId;
 
-    @Value("${cognito.region:${COGNITO_REGION:us-east-1}}")
-    private String region;
+    // Shared and thread-safe; see CognitoClientConfig
+    @Autowired
+    private CognitoIdentityProviderClient cognitoClient;
 
-    private CognitoIdentityProviderClient getCognitoClient() {
-        return CognitoIdentityProviderClient.builder()
-                .region(Region.of(region))
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
-    }
+    // Non-blocking calls for the auth endpoints; see CognitoClientConfig
+    @Autowired
+    private CognitoIdentityProviderAsyncClient cognitoAsyncClient;
 
     public SignUpResponse signUp(String email, String password) {
-        CognitoIdentityProviderClient cognitoClient = getCognitoClient();
-        
-        try {
-            AttributeType emailAttribute = AttributeType.builder()
-                    .name("email")
-                    .value(email)
-                    .build();
-
-            SignUpRequest signUpRequest = SignUpRequest.builder()
-                    .clientId(clientId)
-                    .username(email)
-                    .password(password)
-                    .userAttributes(emailAttribute)
-                    .build();
-
-            return cognitoClient.signUp(signUpRequest);
-        } finally {
-            cognitoClient.close();
-        }
+        return cognitoClient.signUp(signUpRequest(email, password));
+    }
+
+    public CompletableFuture<SignUpResponse> signUpAsync(String email, String password) {
+        return cognitoAsyncClient.signUp(signUpRequest(email, password));
+    }
+
+    private SignUpRequest signUpRequest(String email, String password) {
+        AttributeType emailAttribute = AttributeType.builder()
+                .name("email")
+                .value(email)
+                .build();
+
+        return SignUpRequest.builder()
+                .clientId(clientId)
+                .username(email)
+                .password(password)
+                .userAttributes(emailAttribute)
+                .build();
     }
 
     public ConfirmSignUpResponse confirmSignUp(String email, String confirmationCode) {
-        CognitoIdentityProviderClient cognitoClient = getCognitoClient();
-        
+        return cognitoClient.confirmSignUp(confirmSignUpRequest(email, confirmationCode));
+    }
+
+    public CompletableFuture<ConfirmSignUpResponse> confirmSignUpAsync(String email, String confirmationCode) {
+        return cognitoAsyncClient.confirmSignUp(confirmSignUpRequest(email, confirmationCode));
+    }
+
+    private ConfirmSignUpRequest confirmSignUpRequest(String email, String confirmationCode) {
+        return ConfirmSignUpRequest.builder()
+                .clientId(clientId)
+                .username(email)
+                .confirmationCode(confirmationCode)
+                .build();
+    }
+
+    public ResendConfirmationCodeResponse resendConfirmationCode(String email) {
+        ResendConfirmationCodeRequest resendRequest = ResendConfirmationCodeRequest.builder()
+                .clientId(clientId)
+                .username(email)
+                .build();
+
+        return cognitoClient.resendConfirmationCode(resendRequest);
+    }
+
+    public InitiateAuthResponse initiateAuth(String email, String password) {
+        InitiateAuthRequest authRequest = initiateAuthRequest(email, password);
         try {
-            ConfirmSignUpRequest confirmRequest = ConfirmSignUpRequest.builder()
-                    .clientId(clientId)
-                    .username(email)
-                    .confirmationCode(confirmationCode)
-                    .build();
-
-            return cognitoClient.confirmSignUp(confirmRequest);
-        } finally {
-            cognitoClient.close();
+            return cognitoClient.initiateAuth(authRequest);
+        } catch (InvalidParameterException | SdkClientException e) {
+            throw translateAuthError(e);
         }
     }
 
-    public ResendConfirmationCodeResponse resendConfirmationCode(String email) {
-        CognitoIdentityProviderClient cognitoClient = getCognitoClient();
-        
+    public CompletableFuture<InitiateAuthResponse> initiateAuthAsync(String email, String password) {
+        InitiateAuthRequest authRequest;
         try {
-            ResendConfirmationCodeRequest resendRequest = ResendConfirmationCodeRequest.builder()
-                    .clientId(clientId)
-                    .username(email)
-                    .build();
-
-            return cognitoClient.resendConfirmationCode(resendRequest);
-        } finally {
-            cognitoClient.close();
+            authRequest = initiateAuthRequest(email, password);
+        } catch (IllegalStateException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return cognitoAsyncClient.initiateAuth(authRequest).handle((response, error) -> {
+            if (error == null) {
+                return response;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof InvalidParameterException || cause instanceof SdkClientException) {
+                throw translateAuthError((RuntimeException) cause);
+            }
+            throw new CompletionException(cause);
+        });
     }
 
-    public InitiateAuthResponse initiateAuth(String email, String password) {
+    private InitiateAuthRequest initiateAuthRequest(String email, String password) {
         // Validate configuration
         if (clientId == null || clientId.isEmpty()) {
             throw new IllegalStateException("Cognito Client ID is not configured. Please set cognito.clientId or COGNITO_CLIENT_ID environment variable.");
@@ -91,56 +113,44 @@ public class CognitoService {
         if (userPoolId == null || userPoolId.isEmpty()) {
             throw new IllegalStateException("Cognito User Pool ID is not configured. Please set cognito.userPoolId or COGNITO_USER_POOL_ID environment variable.");
         }
-        
-        CognitoIdentityProviderClient cognitoClient = getCognitoClient();
-        
-        try {
-            Map<String, String> authParams = new HashMap<>();
-            authParams.put("USERNAME", email);
-            authParams.put("PASSWORD", password);
 
-            InitiateAuthRequest authRequest = InitiateAuthRequest.builder()
-                    .clientId(clientId)
-                    .authFlow(AuthFlowType.USER_PASSWORD_AUTH)
-                    .authParameters(authParams)
-                    .build();
+        Map<String, String> authParams = new HashMap<>();
+        authParams.put("USERNAME", email);
+        authParams.put("PASSWORD", password);
 
-            return cognitoClient.initiateAuth(authRequest);
-        } catch (InvalidParameterException e) {
+        return InitiateAuthRequest.builder()
+                .clientId(clientId)
+                .authFlow(AuthFlowType.USER_PASSWORD_AUTH)
+                .authParameters(authParams)
+                .build();
+    }
+
+    private static RuntimeException translateAuthError(RuntimeException e) {
+        String errorMsg = e.getMessage();
+        if (e instanceof InvalidParameterException) {
             // More specific error handling for validation errors
-            String errorMsg = e.getMessage();
             if (errorMsg != null && (errorMsg.contains("validation") || errorMsg.contains("InvalidParameter"))) {
-                throw new IllegalStateException(
+                return new IllegalStateException(
                     "Cognito authentication failed: The app client may not have USER_PASSWORD_AUTH enabled, " +
                     "or the clientId/userPoolId may be incorrect. " +
                     "Please check your Cognito User Pool App Client settings in AWS Console. " +
                     "Error: " + errorMsg, e);
             }
-            throw e;
-        } catch (SdkClientException e) {
-            // Handle AWS SDK client errors (e.g., missing credentials, network issues)
-            String errorMsg = e.getMessage();
-            throw new IllegalStateException(
-                "Cognito client error: " + errorMsg + 
-                ". Please check your AWS credentials and Cognito configuration.", e);
-        } finally {
-            cognitoClient.close();
+            return e;
         }
+        // Handle AWS SDK client errors (e.g., missing credentials, network issues)
+        return new IllegalStateException(
+            "Cognito client error: " + errorMsg +
+            ". Please check your AWS credentials and Cognito configuration.", e);
     }
 
     public AdminGetUserResponse getUser(String email) {
-        CognitoIdentityProviderClient cognitoClient = getCognitoClient();
-        
-        try {
-            AdminGetUserRequest getUserRequest = AdminGetUserRequest.builder()
-                    .userPoolId(userPoolId)
-                    .username(email)
-                    .build();
-
-            return cognitoClient.adminGetUser(getUserRequest);
-        } finally {
-            cognitoClient.close();
-        }
+        AdminGetUserRequest getUserRequest = AdminGetUserRequest.builder()
+                .userPoolId(userPoolId)
+                .username(email)
+                .build();
+
+        return cognitoClient.adminGetUser(getUserRequest);
     }
 
     public String getUserSub(String email) {
@@ -156,5 +166,20 @@ public class CognitoService {
             return null;
         }
     }
+
+    // The user's sub, or null when it can't be read
+    public CompletableFuture<String> getUserSubAsync(String email) {
+        AdminGetUserRequest getUserRequest = AdminGetUserRequest.builder()
+                .userPoolId(userPoolId)
+                .username(email)
+                .build();
+        return cognitoAsyncClient.adminGetUser(getUserRequest)
+                .thenApply(userResponse -> userResponse.userAttributes().stream()
+                        .filter(attr -> attr.name().equals("sub"))
+                        .findFirst()
+                        .map(AttributeType::value)
+                        .orElse(userResponse.username()))
+                .exceptionally(e -> null);
+    }
 }
 
@@ -0,0 +1,117 @@
+package urbane.urbanewebapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.repository.EventRepository;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Read-through cache in front of the event listing reads. Entries are bounded in size and
+ * expire after a TTL (spring.cache.caffeine.spec); writes evict only the keys whose result
+ * could have changed, so unrelated states, cities and pages stay cached.
+ *
+ * Cached events are shared between requests and must be treated as read-only.
+ */
+@Service
+public class EventCacheService {
+
+    public static final String BY_ID = "events.byId";
+    public static final String BY_STATE = "events.byState";
+    public static final String BY_STATE_CITY = "events.byStateCity";
+    public static final String PAGES = "events.pages";
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Filters and position of one /getAllEvents page; the arguments of EventRepository.findPage
+     */
+    public record PageKey(long afterId, int limit, String state, String city,
+                          String dateFrom, String dateBefore, boolean hasCapacity) {
+
+        // Whether the event passes this page's filters, ignoring capacity
+        boolean matches(Event event) {
+            return event.getId() > afterId
+                    && (state == null || state.equalsIgnoreCase(event.getState()))
+                    && (city == null || city.equalsIgnoreCase(event.getCity()))
+                    && (dateFrom == null || (event.getDate() != null && event.getDate().compareTo(dateFrom) >= 0))
+                    && (dateBefore == null || (event.getDate() != null && event.getDate().compareTo(dateBefore) < 0));
+        }
+    }
+
+    public Event findById(long id) {
+        return cache(BY_ID).get(id, () -> eventRepository.findWithCreatorById(id).orElse(null));
+    }
+
+    public List<Event> findByState(String state) {
+        return cache(BY_STATE).get(state, () -> List.copyOf(eventRepository.findEventsByState(state)));
+    }
+
+    public List<Event> findByStateAndCity(String state, String city) {
+        return cache(BY_STATE_CITY).get(stateCityKey(state, city),
+                () -> List.copyOf(eventRepository.findEventsByStateAndCity(state, city)));
+    }
+
+    /**
+     * Up to {@code key.limit()} events of the page; the caller asks for one more than it returns
+     */
+    public List<Event> findPage(PageKey key) {
+        return cache(PAGES).get(key, () -> List.copyOf(eventRepository.findPage(key.afterId(), key.state(), key.city(),
+                key.dateFrom(), key.dateBefore(), key.hasCapacity(), PageRequest.of(0, key.limit()))));
+    }
+
+    /**
+     * Evicts every entry that could contain the event. For an update, call it with the values before and after
+     * the change, since moving an event between states or cities changes both lists.
+     */
+    public void evict(Event event) {
+        evict(event.getId(), event.getState(), event.getCity());
+        evictPages(key -> key.matches(event));
+    }
+
+    /**
+     * An RSVP only changes which events have capacity left, so only the hasCapacity pages that could hold the event
+     * are evicted
+     */
+    public void evictForRsvp(Event event) {
+        evictPages(key -> key.hasCapacity() && key.matches(event));
+    }
+
+    private void evict(Long id, String state, String city) {
+        cache(BY_ID).evict(id);
+        if (state != null) {
+            cache(BY_STATE).evict(state);
+            if (city != null) {
+                cache(BY_STATE_CITY).evict(stateCityKey(state, city));
+            }
+        }
+    }
+
+    private void evictPages(Predicate<PageKey> affected) {
+        Cache pages = cache(PAGES);
+        if (pages instanceof CaffeineCache caffeine) {
+            caffeine.getNativeCache().asMap().keySet().removeIf(key -> affected.test((PageKey) key));
+        } else {
+            pages.clear();
+        }
+    }
+
+    private Cache cache(String name) {
+        return Objects.requireNonNull(cacheManager.getCache(name), name);
+    }
+
+    private static String stateCityKey(String state, String city) {
+        return state + "\u0000" + city;
+    }
+}
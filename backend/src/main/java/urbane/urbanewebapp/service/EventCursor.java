@@ -0,0 +1,24 @@
+package urbane.urbanewebapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in the event listing: the id of the last event returned.
+ * Serialized as an opaque URL-safe token for the {@code cursor} query parameter.
+ */
+public record EventCursor(long id) {
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static EventCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            return new EventCursor(Long.parseLong(raw));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package urbane.urbanewebapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.model.Location;
+import urbane.urbanewebapp.model.Profile;
+import urbane.urbanewebapp.model.User;
+import urbane.urbanewebapp.repository.EventRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the event catalogue as newline-delimited JSON, one event per line.
+ * Rows are read through a database cursor and written as they arrive; the persistence context
+ * is cleared every batch, so memory stays constant however many events there are.
+ */
+@Service
+public class EventExportService {
+
+    private static final int CLEAR_INTERVAL = 500;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Streams every event to {@code out}; returns the number of events written
+     */
+    @Transactional(readOnly = true)
+    public long writeNdjson(OutputStream out) throws IOException {
+        long written = 0;
+        try (Stream<Event> events = eventRepository.streamAllWithCreator();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // Lines are separated by '\n' below rather than Jackson's default space between root values
+            generator.setRootValueSeparator(null);
+            Iterator<Event> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                writeEvent(generator, iterator.next());
+                generator.writeRaw('\n');
+                if (++written % CLEAR_INTERVAL == 0) {
+                    generator.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        return written;
+    }
+
+    // Same shape as the event listings, without the map copies
+    private void writeEvent(JsonGenerator generator, Event event) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectField("id", event.getId());
+        generator.writeStringField("title", event.getTitle());
+        generator.writeStringField("description", event.getDescription());
+        generator.writeObjectField("capacity", event.getCapacity());
+        generator.writeStringField("date", event.getDate());
+        generator.writeStringField("state", event.getState());
+        generator.writeStringField("country", event.getCountry());
+        generator.writeStringField("city", event.getCity());
+        generator.writeStringField("latitude", event.getLatitude());
+        generator.writeStringField("longitude", event.getLongitude());
+
+        User creator = event.getCreator();
+        if (creator != null) {
+            generator.writeObjectFieldStart("creator");
+            generator.writeObjectField("id", creator.getId());
+            generator.writeStringField("email", creator.getEmail());
+            Profile profile = creator.getProfile();
+            if (profile != null) {
+                generator.writeObjectFieldStart("profile");
+                generator.writeObjectField("id", profile.getId());
+                generator.writeStringField("firstName", profile.getFirstName());
+                generator.writeStringField("lastName", profile.getLastName());
+                generator.writeObjectField("age", profile.getAge());
+                generator.writeStringField("photo", profile.getPhoto());
+                generator.writeStringField("bio", profile.getBio());
+                generator.writeStringField("travelStyle", profile.getTravelStyle());
+                generator.writeStringField("languages", profile.getLanguages());
+                Location location = profile.getLocation();
+                if (location != null) {
+                    generator.writeObjectFieldStart("location");
+                    generator.writeObjectField("id", location.getId());
+                    generator.writeStringField("city", location.getCity());
+                    generator.writeStringField("state", location.getState());
+                    generator.writeStringField("country", location.getCountry());
+                    generator.writeStringField("latitude", location.getLatitude());
+                    generator.writeStringField("longitude", location.getLongitude());
+                    generator.writeEndObject();
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+}
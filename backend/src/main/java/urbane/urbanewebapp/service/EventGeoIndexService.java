@@ -0,0 +1,124 @@
+package urbane.urbanewebapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import urbane.urbanewebapp.repository.EventRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory grid index over event coordinates for radius search.
+ * EventController keeps it up to date on save, update and delete; a periodic rebuild
+ * picks up writes made by other instances. Writers are synchronized with the rebuild so an
+ * update is never lost to a concurrent swap; readers only take the read lock.
+ */
+@Service
+public class EventGeoIndexService {
+
+    static final double CELL_DEGREES = 0.25;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile GeoCellIndex index;
+
+    public record NearbyEvent(long eventId, double distanceKm) {
+    }
+
+    public record NearbyPage(List<NearbyEvent> events, NearbyCursor nextCursor) {
+    }
+
+    @Scheduled(initialDelayString = "${events.geo-index.refresh-interval-ms:3600000}",
+               fixedDelayString = "${events.geo-index.refresh-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        GeoCellIndex rebuilt = new GeoCellIndex(CELL_DEGREES);
+        for (Object[] row : eventRepository.findAllCoordinates()) {
+            Double latitude = GeoCellIndex.parseCoordinate((String) row[1], 90);
+            Double longitude = GeoCellIndex.parseCoordinate((String) row[2], 180);
+            if (latitude != null && longitude != null) {
+                rebuilt.put(((Number) row[0]).longValue(), latitude, longitude);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds, moves or (for missing/invalid coordinates) drops an event after it was saved
+     */
+    public synchronized void put(long eventId, String latitude, String longitude) {
+        GeoCellIndex current = getIndex();
+        Double lat = GeoCellIndex.parseCoordinate(latitude, 90);
+        Double lon = GeoCellIndex.parseCoordinate(longitude, 180);
+        lock.writeLock().lock();
+        try {
+            if (lat != null && lon != null) {
+                current.put(eventId, lat, lon);
+            } else {
+                current.remove(eventId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public synchronized void remove(long eventId) {
+        GeoCellIndex current = getIndex();
+        lock.writeLock().lock();
+        try {
+            current.remove(eventId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Events within {@code radiusKm}, nearest first (ties by id), starting strictly after {@code after}
+     */
+    public NearbyPage findNear(double latitude, double longitude, double radiusKm, int limit, NearbyCursor after) {
+        GeoCellIndex current = getIndex();
+        List<NearbyEvent> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            current.within(latitude, longitude, radiusKm, (eventId, distanceKm) -> {
+                if (after == null || after.precedes(distanceKm, eventId)) {
+                    found.add(new NearbyEvent(eventId, distanceKm));
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        found.sort(Comparator.comparingDouble(NearbyEvent::distanceKm).thenComparingLong(NearbyEvent::eventId));
+
+        List<NearbyEvent> page = found.size() > limit ? found.subList(0, limit) : found;
+        NearbyCursor nextCursor = null;
+        if (found.size() > limit) {
+            NearbyEvent last = page.get(page.size() - 1);
+            nextCursor = new NearbyCursor(last.distanceKm(), last.eventId());
+        }
+        return new NearbyPage(new ArrayList<>(page), nextCursor);
+    }
+
+    private GeoCellIndex getIndex() {
+        GeoCellIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                if (index == null) {
+                    rebuild();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+}
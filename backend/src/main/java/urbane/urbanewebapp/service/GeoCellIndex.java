@@ -0,0 +1,172 @@
+package urbane.urbanewebapp.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size latitude/longitude grid over points keyed by a long id.
+ * A radius query only visits the cells overlapping the circle's bounding box, and computes
+ * the haversine distance only for the points stored in those cells.
+ *
+ * Not thread-safe; callers serialize writers against readers.
+ */
+public class GeoCellIndex {
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+
+    private final double cellDegrees;
+    private final int latCells;
+    private final int lonCells;
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<Long, Long> cellKeys = new HashMap<>();
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long id, double distanceKm);
+    }
+
+    public GeoCellIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.latCells = (int) Math.ceil(180.0 / cellDegrees);
+        this.lonCells = (int) Math.ceil(360.0 / cellDegrees);
+    }
+
+    public int size() {
+        return cellKeys.size();
+    }
+
+    /**
+     * Inserts or moves a point
+     */
+    public void put(long id, double latitude, double longitude) {
+        remove(id);
+        long key = cellKey(latIndex(latitude), lonIndex(longitude));
+        cells.computeIfAbsent(key, k -> new Cell()).add(id, latitude, longitude);
+        cellKeys.put(id, key);
+    }
+
+    public void remove(long id) {
+        Long key = cellKeys.remove(id);
+        if (key != null) {
+            Cell cell = cells.get(key);
+            cell.remove(id);
+            if (cell.size == 0) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Calls {@code visitor} for every point within {@code radiusKm} of the given coordinates,
+     * in no particular order
+     */
+    public void within(double latitude, double longitude, double radiusKm, Visitor visitor) {
+        if (radiusKm <= 0 || cells.isEmpty()) {
+            return;
+        }
+        double latSpan = radiusKm / KM_PER_DEGREE;
+        int fromLat = latIndex(Math.max(-90.0, latitude - latSpan));
+        int toLat = latIndex(Math.min(90.0, latitude + latSpan));
+
+        // Longitude degrees shrink towards the poles; widen the span for the most poleward row
+        double maxAbsLat = Math.min(90.0, Math.abs(latitude) + latSpan);
+        double cosLat = Math.cos(Math.toRadians(maxAbsLat));
+        int lonSteps;
+        int fromLon;
+        if (maxAbsLat >= 89.0 || radiusKm / (KM_PER_DEGREE * cosLat) >= 180.0) {
+            fromLon = 0;
+            lonSteps = lonCells;
+        } else {
+            double lonSpan = radiusKm / (KM_PER_DEGREE * cosLat);
+            fromLon = lonIndex(longitude - lonSpan);
+            int toLon = lonIndex(longitude + lonSpan);
+            lonSteps = Math.min(lonCells, Math.floorMod(toLon - fromLon, lonCells) + 1);
+        }
+
+        for (int lat = fromLat; lat <= toLat; lat++) {
+            for (int step = 0; step < lonSteps; step++) {
+                Cell cell = cells.get(cellKey(lat, (fromLon + step) % lonCells));
+                if (cell == null) continue;
+                for (int i = 0; i < cell.size; i++) {
+                    double distance = distanceKm(latitude, longitude, cell.latitudes[i], cell.longitudes[i]);
+                    if (distance <= radiusKm) {
+                        visitor.accept(cell.ids[i], distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Great-circle (haversine) distance in kilometres
+     */
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Parses a stored latitude/longitude string; null when missing, malformed or out of range
+     */
+    public static Double parseCoordinate(String value, double limit) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            return Double.isFinite(parsed) && Math.abs(parsed) <= limit ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int latIndex(double latitude) {
+        return Math.min(latCells - 1, (int) Math.floor((latitude + 90.0) / cellDegrees));
+    }
+
+    private int lonIndex(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180.0) / cellDegrees), lonCells);
+    }
+
+    private long cellKey(int latIndex, int lonIndex) {
+        return (long) latIndex * lonCells + lonIndex;
+    }
+
+    // Points of one cell in parallel arrays; removal swaps the last entry in
+    private static final class Cell {
+        long[] ids = new long[4];
+        double[] latitudes = new double[4];
+        double[] longitudes = new double[4];
+        int size;
+
+        void add(long id, double latitude, double longitude) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            ids[size] = id;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+
+        void remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    size--;
+                    ids[i] = ids[size];
+                    latitudes[i] = latitudes[size];
+                    longitudes[i] = longitudes[size];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package urbane.urbanewebapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.repository.UserEventRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Optional admission gate for events expecting a burst of joins. While an event is hot, joins are
+ * decided in memory by striped atomic permit counters, seeded with the event's free seats, and never
+ * wait on the database; a join that finds no permit is answered "full" straight away. Admitted RSVPs
+ * are queued and written to user_events (and attendee_count) in JDBC batches by a background worker.
+ *
+ * Admission is per instance: an event should only be made hot on a single instance, before the rush.
+ */
+@Service
+public class HotEventGate {
+
+    private static final String INSERT_SQL = "INSERT INTO user_events (user_id, event_id, rsvp_status) " +
+            "SELECT ?, ?, true WHERE EXISTS (SELECT 1 FROM users WHERE user_id = ?) " +
+            "AND EXISTS (SELECT 1 FROM events WHERE event_id = ?) ON CONFLICT DO NOTHING";
+    private static final String INCREMENT_SQL = "UPDATE events SET attendee_count = attendee_count + ? WHERE event_id = ?";
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM user_events WHERE user_id = ? AND event_id = ?";
+    private static final String USER_EXISTS_SQL = "SELECT COUNT(*) FROM users WHERE user_id = ?";
+
+    // Permit counters sit 16 longs (128 bytes) apart so stripes don't share a cache line
+    private static final int PADDING = 16;
+
+    @Autowired
+    private UserEventRepository userEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EventCacheService eventCacheService;
+
+    @Value("${events.hot.stripes:16}")
+    private int stripes;
+
+    @Value("${events.hot.batch-size:500}")
+    private int batchSize;
+
+    @Value("${events.hot.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${events.hot.known-users.max-entries:100000}")
+    private long knownUsersMaxEntries;
+
+    private final Map<Long, Gate> gates = new ConcurrentHashMap<>();
+    private final BlockingDeque<PendingRsvp> pending = new LinkedBlockingDeque<>();
+    private ScheduledExecutorService writer;
+    // Ids of users seen to exist; only hits are kept, since an unknown id may be registered later
+    private Cache<Long, Boolean> knownUsers;
+
+    private record PendingRsvp(long userId, long eventId) {
+    }
+
+    // Outcome of one committed write: RSVPs inserted per event, and the queued RSVPs with no row in user_events
+    private record WriteResult(Map<Long, Integer> insertedByEvent, List<PendingRsvp> missing) {
+    }
+
+    @PostConstruct
+    void startWriter() {
+        knownUsers = Caffeine.newBuilder().maximumSize(knownUsersMaxEntries).build();
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-event-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                System.err.println("Error writing hot event RSVPs: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopWriter() {
+        writer.shutdown();
+        flush();
+    }
+
+    public boolean isHot(long eventId) {
+        return gates.containsKey(eventId);
+    }
+
+    /**
+     * Puts the event in hot mode, seeding the permits with its free seats and the duplicate check with
+     * its current attendees. The event must be freshly loaded so its attendee count is current.
+     * Activating an event that is already hot keeps its gate: a new one, seeded from the database, would
+     * not see the RSVPs still queued and would sell their seats again.
+     */
+    public void activate(Event event) {
+        if (gates.containsKey(event.getId())) {
+            return;
+        }
+        Set<Long> attendees = ConcurrentHashMap.newKeySet();
+        attendees.addAll(userEventRepository.findAttendeeIds(event.getId()));
+        long available = event.getCapacity() == null
+                ? Long.MAX_VALUE
+                : Math.max(0, event.getCapacity() - event.getAttendeeCount());
+        // A concurrent activation may have won the race; its gate is the one admitting joins
+        gates.putIfAbsent(event.getId(), new Gate(event, available, stripes, attendees));
+    }
+
+    /**
+     * Returns the event to normal, database-checked joins once its queued RSVPs are written
+     */
+    public void deactivate(long eventId) {
+        Gate gate = gates.remove(eventId);
+        if (gate != null) {
+            flush();
+            eventCacheService.evictForRsvp(gate.event);
+        }
+    }
+
+    /**
+     * Whether the user exists, so a hot join can be refused up front instead of being dropped by the writer.
+     * Costs one primary key lookup the first time a user is seen, and nothing after that.
+     */
+    public boolean isKnownUser(long userId) {
+        if (knownUsers.getIfPresent(userId) != null) {
+            return true;
+        }
+        Long count = jdbcTemplate.queryForObject(USER_EXISTS_SQL, Long.class, userId);
+        if (count == null || count == 0) {
+            return false;
+        }
+        knownUsers.put(userId, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Admits or rejects a join from memory; null when the event is not hot
+     */
+    public RsvpService.JoinOutcome tryJoin(long userId, long eventId) {
+        Gate gate = gates.get(eventId);
+        if (gate == null) {
+            return null;
+        }
+        if (!gate.attendees.add(userId)) {
+            return RsvpService.JoinOutcome.ALREADY_JOINED;
+        }
+        if (!gate.tryAcquire(userId)) {
+            gate.attendees.remove(userId);
+            return RsvpService.JoinOutcome.FULL;
+        }
+        pending.add(new PendingRsvp(userId, eventId));
+        return RsvpService.JoinOutcome.JOINED;
+    }
+
+    /**
+     * The event admitted by the gate, as loaded when it was activated
+     */
+    public Event hotEvent(long eventId) {
+        Gate gate = gates.get(eventId);
+        return gate == null ? null : gate.event;
+    }
+
+    /**
+     * Gives the seat of a user who withdrew from a hot event back to the gate
+     */
+    public void releaseSeat(long userId, long eventId) {
+        Gate gate = gates.get(eventId);
+        if (gate != null && gate.attendees.remove(userId)) {
+            gate.release(userId);
+        }
+    }
+
+    /**
+     * Writes every queued RSVP; called by the writer and before anything that reads RSVPs of a hot event.
+     * Rows the database rejects for good are dropped with their seat handed back, so they can't block the queue.
+     * A transient failure (lost connection, deadlock, lock timeout) puts the rows not yet committed back at the
+     * head of the queue and is rethrown; the next flush retries them.
+     */
+    public synchronized void flush() {
+        List<PendingRsvp> batch = new ArrayList<>(batchSize);
+        while (pending.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<PendingRsvp> batch) {
+        Map<Long, Integer> insertedByEvent = new HashMap<>();
+        List<PendingRsvp> missing = new ArrayList<>();
+        try {
+            try {
+                WriteResult result = writeInTransaction(batch);
+                insertedByEvent.putAll(result.insertedByEvent());
+                missing.addAll(result.missing());
+            } catch (RuntimeException e) {
+                if (isRetryable(e)) {
+                    // The transaction rolled back, so none of the batch is written
+                    requeue(batch);
+                    throw e;
+                }
+                // One bad row fails the whole batch; write the rows one at a time so only that row is lost
+                System.err.println("Error writing hot event RSVP batch, retrying row by row: " + e.getMessage());
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingRsvp rsvp = batch.get(i);
+                    try {
+                        WriteResult result = writeInTransaction(List.of(rsvp));
+                        result.insertedByEvent().forEach((eventId, count) -> insertedByEvent.merge(eventId, count, Integer::sum));
+                        missing.addAll(result.missing());
+                    } catch (RuntimeException rowError) {
+                        if (isRetryable(rowError)) {
+                            // Rows before this one are committed; only this one and the rest go back in the queue
+                            requeue(batch.subList(i, batch.size()));
+                            throw rowError;
+                        }
+                        System.err.println("Dropping hot event RSVP of user " + rsvp.userId() + " for event "
+                                + rsvp.eventId() + ": " + rowError.getMessage());
+                        if (!isWritten(rsvp)) {
+                            missing.add(rsvp);
+                        }
+                    }
+                }
+            }
+        } finally {
+            // Unknown users or events and rejected rows took a permit without taking a seat
+            for (PendingRsvp rsvp : missing) {
+                releaseSeat(rsvp.userId(), rsvp.eventId());
+            }
+            for (Long eventId : insertedByEvent.keySet()) {
+                Gate gate = gates.get(eventId);
+                if (gate != null) {
+                    eventCacheService.evictForRsvp(gate.event);
+                }
+            }
+        }
+    }
+
+    private void requeue(List<PendingRsvp> rows) {
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            pending.addFirst(rows.get(i));
+        }
+    }
+
+    // Failures worth retrying as they are: the database was unreachable or busy, not the row at fault
+    private static boolean isRetryable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof TransactionException;
+    }
+
+    // Whether the RSVP is in user_events; if that can't be read, assume it is, so the seat is never sold twice
+    private boolean isWritten(PendingRsvp rsvp) {
+        try {
+            Long count = jdbcTemplate.queryForObject(EXISTS_SQL, Long.class, rsvp.userId(), rsvp.eventId());
+            return count != null && count > 0;
+        } catch (RuntimeException e) {
+            System.err.println("Error checking hot event RSVP of user " + rsvp.userId() + ": " + e.getMessage());
+            return true;
+        }
+    }
+
+    private WriteResult writeInTransaction(List<PendingRsvp> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (PendingRsvp rsvp : batch) {
+            rows.add(new Object[]{rsvp.userId(), rsvp.eventId(), rsvp.userId(), rsvp.eventId()});
+        }
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Map<Long, Integer> insertedByEvent = new HashMap<>();
+            List<PendingRsvp> missing = new ArrayList<>();
+            int[] inserted = jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            for (int i = 0; i < batch.size(); i++) {
+                PendingRsvp rsvp = batch.get(i);
+                if (inserted[i] > 0) {
+                    insertedByEvent.merge(rsvp.eventId(), 1, Integer::sum);
+                } else if (jdbcTemplate.queryForObject(EXISTS_SQL, Long.class, rsvp.userId(), rsvp.eventId()) == 0) {
+                    // Nothing inserted and no existing row (unknown user or event); a row that already exists,
+                    // e.g. from an earlier attempt whose commit went through, keeps its seat
+                    missing.add(rsvp);
+                }
+            }
+            List<Object[]> increments = new ArrayList<>();
+            insertedByEvent.forEach((eventId, count) -> increments.add(new Object[]{count, eventId}));
+            jdbcTemplate.batchUpdate(INCREMENT_SQL, increments);
+            return new WriteResult(insertedByEvent, missing);
+        });
+    }
+
+    private static final class Gate {
+        final Event event;
+        final Set<Long> attendees;
+        final AtomicLongArray permits;
+        final int stripes;
+
+        Gate(Event event, long available, int stripes, Set<Long> attendees) {
+            this.event = event;
+            this.attendees = attendees;
+            this.stripes = stripes;
+            this.permits = new AtomicLongArray(stripes * PADDING);
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                long share = available == Long.MAX_VALUE
+                        ? Long.MAX_VALUE / stripes
+                        : available / stripes + (stripe < available % stripes ? 1 : 0);
+                permits.set(stripe * PADDING, share);
+            }
+        }
+
+        // Takes a permit from the user's home stripe, or from any other stripe once that one is empty
+        boolean tryAcquire(long userId) {
+            int home = homeStripe(userId);
+            for (int i = 0; i < stripes; i++) {
+                int index = ((home + i) % stripes) * PADDING;
+                long available;
+                while ((available = permits.get(index)) > 0) {
+                    if (permits.compareAndSet(index, available, available - 1)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void release(long userId) {
+            permits.incrementAndGet(homeStripe(userId) * PADDING);
+        }
+
+        private int homeStripe(long userId) {
+            long z = userId * 0x9e3779b97f4a7c15L;
+            return (int) Math.floorMod(z ^ (z >>> 32), (long) stripes);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package urbane.urbanewebapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import urbane.urbanewebapp.model.MatchCandidate;
+import urbane.urbanewebapp.repository.MatchCandidateRepository;
+import urbane.urbanewebapp.repository.MatchCandidateRunRepository;
+import urbane.urbanewebapp.repository.ProfileRepository;
+import urbane.urbanewebapp.repository.UserRepository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Precomputed potential matches in the match_candidates table.
+ * A scheduled job writes the top-N candidates of every profiled user, processing user id ranges
+ * in parallel chunks. Requests read a page from the table and only re-apply connections made
+ * since the run. A user whose profile changed has their rows dropped, and their list is
+ * recomputed on their next request. A match_candidate_runs row marks each computed list, so users
+ * without any match aren't recomputed on every request.
+ * Concurrent writers for the same user (a request and the batch job) can't duplicate a candidate:
+ * (user_id, candidate_id) is unique and the inserts skip rows that already exist.
+ */
+@Service
+public class MatchCandidateService {
+
+    private static final String INSERT_SQL = "INSERT INTO match_candidates (user_id, candidate_id, score, reasons, computed_at) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+    private static final String INSERT_RUN_SQL = "INSERT INTO match_candidate_runs (user_id, computed_at) VALUES (?, ?) " +
+            "ON CONFLICT DO NOTHING";
+
+    @Autowired
+    private MatchmakingIndexService matchmakingIndexService;
+
+    @Autowired
+    private MatchCandidateRepository matchCandidateRepository;
+
+    @Autowired
+    private MatchCandidateRunRepository matchCandidateRunRepository;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${matchmaking.precomputed.enabled:true}")
+    private boolean enabled;
+
+    @Value("${matchmaking.batch.top-n:200}")
+    private int topN;
+
+    @Value("${matchmaking.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${matchmaking.batch.threads:4}")
+    private int threads;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Scheduled(cron = "${matchmaking.batch.cron:0 0 3 * * *}")
+    public synchronized void recomputeAll() {
+        if (!enabled) {
+            return;
+        }
+        List<Object[]> range = profileRepository.findUserIdRange();
+        if (range.isEmpty() || range.get(0)[0] == null) {
+            return;
+        }
+        long minUserId = ((Number) range.get(0)[0]).longValue();
+        long maxUserId = ((Number) range.get(0)[1]).longValue();
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> chunks = new ArrayList<>();
+            for (long from = minUserId; from <= maxUserId; from += chunkSize) {
+                long chunkFrom = from;
+                long chunkTo = Math.min(maxUserId, from + chunkSize - 1);
+                chunks.add(pool.submit(() -> recomputeRange(chunkFrom, chunkTo)));
+            }
+            int written = 0;
+            int failed = 0;
+            for (Future<Integer> chunk : chunks) {
+                try {
+                    written += chunk.get();
+                } catch (Exception e) {
+                    // A failed chunk keeps its previous rows; the other chunks still commit
+                    failed++;
+                    System.err.println("Error computing match candidates chunk: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+            System.out.println("Match candidates computed: " + written + " rows in " + chunks.size() + " chunks ("
+                    + failed + " failed) in " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * One page of the user's precomputed matches, recomputing the list first if it was never
+     * computed or was invalidated by a profile change
+     */
+    public MatchmakingSnapshot.MatchPage findPage(MatchProfile profile, int limit, MatchCursor after) {
+        List<MatchCandidate> rows = queryPage(profile.userId(), limit, after);
+        if (rows.isEmpty() && after == null && !matchCandidateRunRepository.existsById(profile.userId())) {
+            recompute(profile);
+            rows = queryPage(profile.userId(), limit, after);
+        }
+
+        boolean hasMore = rows.size() > limit;
+        List<MatchmakingSnapshot.ScoredMatch> matches = rows.stream()
+                .limit(limit)
+                .map(row -> new MatchmakingSnapshot.ScoredMatch(row.getCandidateId(), row.getScore(), parseReasons(row.getReasons())))
+                .collect(Collectors.toList());
+        MatchCursor nextCursor = null;
+        if (hasMore) {
+            MatchmakingSnapshot.ScoredMatch last = matches.get(matches.size() - 1);
+            nextCursor = new MatchCursor(last.score(), last.userId());
+        }
+        return new MatchmakingSnapshot.MatchPage(matches, nextCursor);
+    }
+
+    /**
+     * Drops a user's precomputed list after their profile or interests changed
+     */
+    public void invalidate(long userId) {
+        if (enabled) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM match_candidate_runs WHERE user_id = ?", userId);
+                jdbcTemplate.update("DELETE FROM match_candidates WHERE user_id = ?", userId);
+            });
+        }
+    }
+
+    private List<MatchCandidate> queryPage(long userId, int limit, MatchCursor after) {
+        return matchCandidateRepository.findPageForUser(userId,
+                after == null ? Integer.MAX_VALUE : after.score(),
+                after == null ? Long.MAX_VALUE : after.userId(),
+                limit + 1);
+    }
+
+    private void recompute(MatchProfile profile) {
+        Set<Long> excluded = userRepository.findExcludedMatchUserIds(profile.userId()).stream()
+                .map(Number::longValue)
+                .collect(Collectors.toSet());
+        Timestamp computedAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = toRows(profile, excluded, computedAt);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM match_candidates WHERE user_id = ?", profile.userId());
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            jdbcTemplate.update(INSERT_RUN_SQL, profile.userId(), computedAt);
+        });
+    }
+
+    // Replaces every row of the users in [fromUserId, toUserId] in one transaction
+    private int recomputeRange(long fromUserId, long toUserId) {
+        Map<Long, Set<Long>> excludedByUser = new HashMap<>();
+        for (Object[] pair : userRepository.findExcludedMatchPairsByUserIdBetween(fromUserId, toUserId)) {
+            excludedByUser.computeIfAbsent(((Number) pair[0]).longValue(), id -> new HashSet<>())
+                    .add(((Number) pair[1]).longValue());
+        }
+        Timestamp computedAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> runs = new ArrayList<>();
+        for (MatchProfile profile : matchmakingIndexService.loadProfilesInRange(fromUserId, toUserId)) {
+            rows.addAll(toRows(profile, excludedByUser.getOrDefault(profile.userId(), Set.of()), computedAt));
+            runs.add(new Object[]{profile.userId(), computedAt});
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM match_candidates WHERE user_id BETWEEN ? AND ?", fromUserId, toUserId);
+            jdbcTemplate.update("DELETE FROM match_candidate_runs WHERE user_id BETWEEN ? AND ?", fromUserId, toUserId);
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            jdbcTemplate.batchUpdate(INSERT_RUN_SQL, runs);
+        });
+        return rows.size();
+    }
+
+    private List<Object[]> toRows(MatchProfile profile, Set<Long> excluded, Timestamp computedAt) {
+        MatchmakingSnapshot.MatchPage page = matchmakingIndexService.findTopMatches(
+                profile, excluded, topN, null, MatchmakingSnapshot.DEFAULT_RADIUS_KM);
+        List<Object[]> rows = new ArrayList<>(page.matches().size());
+        for (MatchmakingSnapshot.ScoredMatch match : page.matches()) {
+            String reasons = match.reasons().stream().map(Enum::name).collect(Collectors.joining(","));
+            rows.add(new Object[]{profile.userId(), match.userId(), match.score(), reasons, computedAt});
+        }
+        return rows;
+    }
+
+    private static Set<MatchReason> parseReasons(String reasons) {
+        Set<MatchReason> parsed = EnumSet.noneOf(MatchReason.class);
+        if (reasons != null && !reasons.isEmpty()) {
+            Arrays.stream(reasons.split(",")).map(MatchReason::valueOf).forEach(parsed::add);
+        }
+        return parsed;
+    }
+}
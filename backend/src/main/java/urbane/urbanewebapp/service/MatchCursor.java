@@ -0,0 +1,33 @@
+package urbane.urbanewebapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in a ranked match list: the score and user id of the last match returned.
+ * Serialized as an opaque URL-safe token for the {@code cursor} query parameter.
+ */
+public record MatchCursor(int score, long userId) {
+
+    /**
+     * True if a match with this score and user id ranks strictly after the cursor
+     */
+    public boolean precedes(int otherScore, long otherUserId) {
+        return otherScore < score || (otherScore == score && otherUserId > userId);
+    }
+
+    public String encode() {
+        String raw = score + ":" + userId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MatchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            return new MatchCursor(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
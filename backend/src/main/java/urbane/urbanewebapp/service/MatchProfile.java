@@ -0,0 +1,79 @@
+package urbane.urbanewebapp.service;
+
+import urbane.urbanewebapp.model.Interest;
+import urbane.urbanewebapp.model.Location;
+import urbane.urbanewebapp.model.Profile;
+import urbane.urbanewebapp.model.User;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Flat view of the profile fields matchmaking compares, detached from JPA entities
+ * so the index can be built from plain query rows.
+ */
+public record MatchProfile(
+        long userId,
+        Long age,
+        String travelStyle,
+        String languages,
+        String city,
+        String state,
+        String country,
+        Double latitude,
+        Double longitude,
+        long[] interestIds) {
+
+    public static MatchProfile from(User user) {
+        Profile profile = user.getProfile();
+        Location location = profile != null ? profile.getLocation() : null;
+        long[] interestIds = user.getInterests().stream()
+                .mapToLong(Interest::getId)
+                .distinct()
+                .toArray();
+        return new MatchProfile(
+                user.getId(),
+                profile != null ? profile.getAge() : null,
+                profile != null ? profile.getTravelStyle() : null,
+                profile != null ? profile.getLanguages() : null,
+                location != null ? location.getCity() : null,
+                location != null ? location.getState() : null,
+                location != null ? location.getCountry() : null,
+                location != null ? GeoCellIndex.parseCoordinate(location.getLatitude(), 90) : null,
+                location != null ? GeoCellIndex.parseCoordinate(location.getLongitude(), 180) : null,
+                interestIds);
+    }
+
+    public boolean hasCoordinates() {
+        return latitude != null && longitude != null;
+    }
+
+    /**
+     * Languages are stored comma-separated, e.g. "English, Spanish"
+     */
+    public static Set<String> languageTokens(String languages) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (languages == null) {
+            return tokens;
+        }
+        for (String language : languages.split(",")) {
+            String trimmed = language.trim();
+            if (!trimmed.isEmpty()) {
+                tokens.add(trimmed);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Lower-cased, trimmed key used for case-insensitive comparisons; null when blank
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,32 @@
+package urbane.urbanewebapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Applies per-user deltas to the matchmaking index once the triggering write has committed,
+ * and drops the user's precomputed match list so it is recomputed on their next request.
+ * Writes outside a transaction (auto-commit) are delivered immediately.
+ */
+@Component
+public class MatchProfileChangeListener {
+
+    @Autowired
+    private MatchmakingIndexService matchmakingIndexService;
+
+    @Autowired
+    private MatchCandidateService matchCandidateService;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMatchProfileChanged(MatchProfileChangedEvent event) {
+        try {
+            matchmakingIndexService.applyChange(event.userId());
+            matchCandidateService.invalidate(event.userId());
+        } catch (Exception e) {
+            // The write itself succeeded; the scheduled consistency check will repair the index
+            System.err.println("Error applying matchmaking index change for user " + event.userId() + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
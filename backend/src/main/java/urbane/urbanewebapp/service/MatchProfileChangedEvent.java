@@ -0,0 +1,8 @@
+package urbane.urbanewebapp.service;
+
+/**
+ * Published when a write may have changed the fields matchmaking indexes for a user
+ * (profile, location, languages, travel style or interests).
+ */
+public record MatchProfileChangedEvent(long userId) {
+}
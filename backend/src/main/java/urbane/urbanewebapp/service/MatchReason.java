@@ -0,0 +1,15 @@
+package urbane.urbanewebapp.service;
+
+/**
+ * Signals that contributed to a match score; stored as reason codes with precomputed matches
+ */
+public enum MatchReason {
+    SHARED_INTERESTS,
+    SIMILAR_AGE,
+    SAME_CITY,
+    SAME_STATE,
+    SAME_COUNTRY,
+    NEARBY,
+    COMMON_LANGUAGE,
+    TRAVEL_STYLE
+}
@@ -0,0 +1,295 @@
+package urbane.urbanewebapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import urbane.urbanewebapp.repository.ProfileRepository;
+import urbane.urbanewebapp.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the in-memory matchmaking index (see {@link MatchmakingSnapshot}).
+ * Profile and interest writes are applied as per-user deltas through {@link #applyChange};
+ * a full rebuild runs on a long schedule as a safety net, and a periodic consistency
+ * check compares the incrementally maintained index with a fresh build.
+ * With {@code matchmaking.index.enabled=false} no index is held; each request is served from a
+ * SQL candidate prefilter and only those candidates are scored.
+ */
+@Service
+public class MatchmakingIndexService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Value("${matchmaking.index.enabled:true}")
+    private boolean indexEnabled;
+
+    @Value("${matchmaking.prefilter.max-candidates:2000}")
+    private int maxPrefilterCandidates;
+
+    @Value("${matchmaking.approximate.enabled:false}")
+    private boolean approximateEnabled;
+
+    // Readers share the snapshot; per-user deltas and swaps take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile MatchmakingSnapshot snapshot;
+
+    // Users changed from the start of a full load until its snapshot is swapped in (or discarded), with the
+    // sequence number of their latest change; the load may or may not have seen their write
+    private final Map<Long, Long> changedDuringLoad = new ConcurrentHashMap<>();
+    private final AtomicLong changeSequence = new AtomicLong();
+    private volatile boolean loading;
+
+    @Scheduled(fixedDelayString = "${matchmaking.index.refresh-interval-ms:21600000}")
+    public synchronized void rebuild() {
+        if (!indexEnabled) {
+            return;
+        }
+        try {
+            swap(loadSnapshot());
+        } finally {
+            endLoad();
+        }
+    }
+
+    /**
+     * Compares the incrementally maintained index with a full rebuild from the database and
+     * swaps in the rebuild if they disagree. Returns the ids of the users that differed.
+     */
+    @Scheduled(initialDelayString = "${matchmaking.index.consistency-check-interval-ms:3600000}",
+               fixedDelayString = "${matchmaking.index.consistency-check-interval-ms:3600000}")
+    public synchronized Set<Long> verifyConsistency() {
+        MatchmakingSnapshot current = snapshot;
+        if (!indexEnabled || current == null) {
+            return Set.of();
+        }
+        try {
+            MatchmakingSnapshot rebuilt = loadSnapshot();
+            Set<Long> mismatched;
+            lock.readLock().lock();
+            try {
+                mismatched = current.differences(rebuilt);
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Users written during the load were patched by their own deltas; they are not drift
+            mismatched.removeAll(changedDuringLoad.keySet());
+
+            if (!mismatched.isEmpty()) {
+                System.err.println("Matchmaking index drifted for " + mismatched.size() + " users, swapping in a rebuild");
+                swap(rebuilt);
+            }
+            return mismatched;
+        } finally {
+            endLoad();
+        }
+    }
+
+    public MatchmakingSnapshot getSnapshot() {
+        MatchmakingSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    public MatchmakingSnapshot.MatchPage findTopMatches(MatchProfile profile, Set<Long> excludedUserIds,
+                                                        int limit, MatchCursor after, double radiusKm) {
+        if (!indexEnabled) {
+            return findTopMatchesPrefiltered(profile, excludedUserIds, limit, after, radiusKm);
+        }
+        MatchmakingSnapshot current = getSnapshot();
+        lock.readLock().lock();
+        try {
+            return current.findTopMatches(profile, excludedUserIds, limit, after, radiusKm);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * LSH-based candidate generation (see {@link MatchmakingSnapshot#findApproximateTopMatches});
+     * falls back to the exact ranking when approximate matching is not enabled.
+     */
+    public MatchmakingSnapshot.MatchPage findApproximateTopMatches(MatchProfile profile, Set<Long> excludedUserIds,
+                                                                   int limit, MatchCursor after, double radiusKm) {
+        if (!indexEnabled || !approximateEnabled) {
+            return findTopMatches(profile, excludedUserIds, limit, after, radiusKm);
+        }
+        MatchmakingSnapshot current = getSnapshot();
+        lock.readLock().lock();
+        try {
+            return current.findApproximateTopMatches(profile, excludedUserIds, limit, after, radiusKm);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Re-reads one user's profile and interests and patches the index in place.
+     * Called after the write that changed them has committed.
+     */
+    public void applyChange(long userId) {
+        if (loading) {
+            changedDuringLoad.put(userId, changeSequence.incrementAndGet());
+        }
+        if (snapshot == null) {
+            // Not built yet; the first build will read the change
+            return;
+        }
+        MatchProfile profile = loadProfile(userId);
+        lock.writeLock().lock();
+        try {
+            applyToSnapshot(snapshot, userId, profile);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index-free path: the database narrows the users down to those sharing an interest, a
+     * location or an age band (minus excluded connections), and only they are loaded and scored.
+     * Users who are only nearby (without a shared interest, location text or age band) are not candidates here.
+     */
+    MatchmakingSnapshot.MatchPage findTopMatchesPrefiltered(MatchProfile profile, Set<Long> excludedUserIds,
+                                                            int limit, MatchCursor after, double radiusKm) {
+        List<Long> candidateIds = new ArrayList<>();
+        for (Object[] row : userRepository.findMatchCandidates(profile.userId(), maxPrefilterCandidates)) {
+            candidateIds.add(((Number) row[0]).longValue());
+        }
+        if (candidateIds.isEmpty()) {
+            return new MatchmakingSnapshot.MatchPage(List.of(), null);
+        }
+        return MatchmakingSnapshot.build(loadProfiles(candidateIds))
+                .findTopMatches(profile, excludedUserIds, limit, after, radiusKm);
+    }
+
+    // Starts recording changed users, which lasts until endLoad; the caller must call it when done
+    private MatchmakingSnapshot loadSnapshot() {
+        changedDuringLoad.clear();
+        loading = true;
+        return MatchmakingSnapshot.build(loadProfiles(), approximateEnabled);
+    }
+
+    private void endLoad() {
+        loading = false;
+        changedDuringLoad.clear();
+    }
+
+    /**
+     * Swaps in a fresh build, re-applying users whose writes may have raced with its load. Most are re-read
+     * before taking the write lock; users changed again after that re-read are re-read under it, since their
+     * delta may only have reached the old snapshot. Recording stops under the same lock, so every later
+     * delta lands on the new snapshot.
+     */
+    private void swap(MatchmakingSnapshot rebuilt) {
+        Map<Long, Long> reread = new HashMap<>(changedDuringLoad);
+        Map<Long, MatchProfile> racedProfiles = new HashMap<>();
+        for (Long userId : reread.keySet()) {
+            racedProfiles.put(userId, loadProfile(userId));
+        }
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad.forEach((userId, sequence) -> {
+                if (!sequence.equals(reread.get(userId))) {
+                    racedProfiles.put(userId, loadProfile(userId));
+                }
+            });
+            racedProfiles.forEach((userId, profile) -> applyToSnapshot(rebuilt, userId, profile));
+            snapshot = rebuilt;
+            endLoad();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("Matchmaking index rebuilt with " + rebuilt.userCount() + " profiles");
+    }
+
+    // Caller holds the write lock; a null profile means the user no longer has one
+    private static void applyToSnapshot(MatchmakingSnapshot target, long userId, MatchProfile profile) {
+        if (profile == null) {
+            target.remove(userId);
+        } else {
+            target.apply(profile);
+        }
+    }
+
+    MatchProfile loadProfile(long userId) {
+        List<Object[]> rows = profileRepository.findMatchmakingRow(userId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        long[] interestIds = userRepository.findInterestIdsByUserId(userId).stream()
+                .mapToLong(Number::longValue)
+                .distinct()
+                .toArray();
+        return toMatchProfile(rows.get(0), interestIds);
+    }
+
+    // Two flat queries (profiles + user_interests rows) instead of hydrating every User entity
+    private List<MatchProfile> loadProfiles() {
+        return toMatchProfiles(profileRepository.findAllMatchmakingRows(), userRepository.findAllUserInterestPairs());
+    }
+
+    private List<MatchProfile> loadProfiles(Collection<Long> userIds) {
+        return toMatchProfiles(profileRepository.findMatchmakingRowsByIdIn(userIds),
+                userRepository.findUserInterestPairsByUserIdIn(userIds));
+    }
+
+    List<MatchProfile> loadProfilesInRange(long fromUserId, long toUserId) {
+        return toMatchProfiles(profileRepository.findMatchmakingRowsByIdBetween(fromUserId, toUserId),
+                userRepository.findUserInterestPairsByUserIdBetween(fromUserId, toUserId));
+    }
+
+    private static List<MatchProfile> toMatchProfiles(List<Object[]> rows, List<Object[]> interestPairs) {
+        Map<Long, List<Long>> interestsByUser = new HashMap<>();
+        for (Object[] row : interestPairs) {
+            long userId = ((Number) row[0]).longValue();
+            long interestId = ((Number) row[1]).longValue();
+            interestsByUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(interestId);
+        }
+
+        List<MatchProfile> profiles = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long userId = ((Number) row[0]).longValue();
+            long[] interestIds = interestsByUser.getOrDefault(userId, List.of()).stream()
+                    .mapToLong(Long::longValue)
+                    .distinct()
+                    .toArray();
+            profiles.add(toMatchProfile(row, interestIds));
+        }
+        return profiles;
+    }
+
+    private static MatchProfile toMatchProfile(Object[] row, long[] interestIds) {
+        return new MatchProfile(
+                ((Number) row[0]).longValue(),
+                row[1] != null ? ((Number) row[1]).longValue() : null,
+                (String) row[2],
+                (String) row[3],
+                (String) row[4],
+                (String) row[5],
+                (String) row[6],
+                GeoCellIndex.parseCoordinate((String) row[7], 90),
+                GeoCellIndex.parseCoordinate((String) row[8], 180),
+                interestIds);
+    }
+}
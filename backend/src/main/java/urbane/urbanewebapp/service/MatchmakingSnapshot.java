@@ -0,0 +1,747 @@
+package urbane.urbanewebapp.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Columnar index over every user that has a profile.
+ * Each user owns a dense ordinal. Each attribute is stored in a primitive column: interests and
+ * languages as bitmasks, age as a short, city/state/country and travel style as dictionary codes,
+ * coordinates as doubles (also held in a {@link GeoCellIndex} grid).
+ * Candidate generation is a handful of BitSet unions over the posting lists plus one grid lookup
+ * for users within the search radius, and scoring a candidate is a few bitwise ops with no allocation.
+ * Snapshots built with {@code approximate = true} also keep a {@link MinHashLshIndex} over each
+ * user's interest, language and travel style tokens for {@link #findApproximateTopMatches}.
+ *
+ * A snapshot is built in full by {@link #build} and then patched one user at a time with
+ * {@link #apply}/{@link #remove}. It is not thread-safe: {@link MatchmakingIndexService}
+ * serializes writers against readers.
+ */
+public class MatchmakingSnapshot {
+
+    static final int SIMILAR_AGE_YEARS = 5;
+    public static final double DEFAULT_RADIUS_KM = 50;
+    static final double GEO_CELL_DEGREES = 0.5;
+
+    // 16 bands of 2 rows: pairs with Jaccard 0.33 collide with ~85% probability, 0.5 with ~99%
+    static final int LSH_BANDS = 16;
+    static final int LSH_ROWS = 2;
+    static final int LSH_MAX_BUCKET_SCAN = 1000;
+    static final int LSH_MAX_CANDIDATES = 2000;
+
+    // Score weights per signal; location only counts its most specific match
+    static final int SHARED_INTEREST_WEIGHT = 10;
+    static final int SIMILAR_AGE_WEIGHT = 6;
+    static final int SAME_CITY_WEIGHT = 8;
+    static final int SAME_STATE_WEIGHT = 4;
+    static final int SAME_COUNTRY_WEIGHT = 2;
+    // Proximity within the search radius, scaled down linearly with distance (at least 1)
+    static final int NEARBY_WEIGHT = 8;
+    static final int COMMON_LANGUAGE_WEIGHT = 4;
+    static final int TRAVEL_STYLE_WEIGHT = 3;
+
+    private static final short NO_AGE = -1;
+    private static final int NO_CODE = -1;
+    private static final long REMOVED = -1L;
+
+    // Slot bookkeeping; removed users leave a tombstone until the next full rebuild
+    private long[] userIds;
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private int slots;
+
+    // Dictionaries from raw value to dense code, each with a posting list per code
+    private final Dictionary<Long> interests = new Dictionary<>();
+    private final Dictionary<String> cities = new Dictionary<>();
+    private final Dictionary<String> states = new Dictionary<>();
+    private final Dictionary<String> countries = new Dictionary<>();
+    private final Dictionary<String> languages = new Dictionary<>();
+    private final Dictionary<String> travelStyles = new Dictionary<>();
+    private final BitSet flexibleTravelStyleCodes = new BitSet();
+
+    // Columns, one entry (or one stride of words) per ordinal
+    private int interestWords = 1;
+    private long[] interestMasks;
+    private short[] ages;
+    private int[] cityIds;
+    private int[] stateIds;
+    private int[] countryIds;
+    private int languageWords = 1;
+    private long[] languageMasks;
+    private short[] travelStyleIds;
+    private double[] latitudes;
+    private double[] longitudes;
+    private final GeoCellIndex geo = new GeoCellIndex(GEO_CELL_DEGREES);
+    private final MinHashLshIndex lsh;
+
+    private final Map<Integer, BitSet> agePostings = new HashMap<>();
+    // Users whose travel style is "flexible" or "mixed" match every other travel style
+    private final BitSet flexibleTravelers = new BitSet();
+    private final BitSet anyTravelStyle = new BitSet();
+
+    private MatchmakingSnapshot(int capacity, boolean approximate) {
+        lsh = approximate ? new MinHashLshIndex(LSH_BANDS, LSH_ROWS, 0x5eedL) : null;
+        capacity = Math.max(capacity, 16);
+        userIds = new long[capacity];
+        interestMasks = new long[capacity * interestWords];
+        ages = new short[capacity];
+        cityIds = new int[capacity];
+        stateIds = new int[capacity];
+        countryIds = new int[capacity];
+        languageMasks = new long[capacity * languageWords];
+        travelStyleIds = new short[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+    }
+
+    public static MatchmakingSnapshot build(List<MatchProfile> profiles) {
+        return build(profiles, false);
+    }
+
+    public static MatchmakingSnapshot build(List<MatchProfile> profiles, boolean approximate) {
+        MatchmakingSnapshot snapshot = new MatchmakingSnapshot(profiles.size(), approximate);
+        profiles.stream()
+                .sorted(Comparator.comparingLong(MatchProfile::userId))
+                .forEach(snapshot::apply);
+        return snapshot;
+    }
+
+    /**
+     * Upper bound (exclusive) of the ordinals in use, including removed slots
+     */
+    public int size() {
+        return slots;
+    }
+
+    public int userCount() {
+        return ordinals.size();
+    }
+
+    public long userIdAt(int ordinal) {
+        return userIds[ordinal];
+    }
+
+    public int ordinalOf(long userId) {
+        return ordinals.getOrDefault(userId, NO_CODE);
+    }
+
+    /**
+     * Inserts or replaces a single user's attributes in place
+     */
+    public void apply(MatchProfile profile) {
+        Integer existing = ordinals.get(profile.userId());
+        int ordinal;
+        if (existing != null) {
+            ordinal = existing;
+            clear(ordinal);
+        } else {
+            ordinal = allocate(profile.userId());
+        }
+
+        for (long interestId : profile.interestIds()) {
+            int code = interests.encode(interestId);
+            if (code >= interestWords * 64) {
+                interestMasks = widen(interestMasks, interestWords, interestWords * 2, userIds.length);
+                interestWords *= 2;
+            }
+            setBit(interestMasks, ordinal * interestWords, code);
+            interests.posting(code).set(ordinal);
+        }
+
+        ages[ordinal] = toAge(profile.age());
+        if (ages[ordinal] != NO_AGE) {
+            agePostings.computeIfAbsent((int) ages[ordinal], age -> new BitSet()).set(ordinal);
+        }
+
+        cityIds[ordinal] = cities.post(MatchProfile.normalize(profile.city()), ordinal);
+        stateIds[ordinal] = states.post(MatchProfile.normalize(profile.state()), ordinal);
+        countryIds[ordinal] = countries.post(MatchProfile.normalize(profile.country()), ordinal);
+
+        for (String language : MatchProfile.languageTokens(profile.languages())) {
+            int code = languages.encode(language);
+            if (code >= languageWords * 64) {
+                languageMasks = widen(languageMasks, languageWords, languageWords * 2, userIds.length);
+                languageWords *= 2;
+            }
+            setBit(languageMasks, ordinal * languageWords, code);
+            languages.posting(code).set(ordinal);
+        }
+
+        String travelStyle = MatchProfile.normalize(profile.travelStyle());
+        int travelStyleCode = travelStyles.post(travelStyle, ordinal);
+        travelStyleIds[ordinal] = (short) travelStyleCode;
+        if (travelStyleCode != NO_CODE) {
+            anyTravelStyle.set(ordinal);
+            if (isFlexible(travelStyle)) {
+                flexibleTravelStyleCodes.set(travelStyleCode);
+                flexibleTravelers.set(ordinal);
+            }
+        }
+
+        if (profile.hasCoordinates()) {
+            latitudes[ordinal] = profile.latitude();
+            longitudes[ordinal] = profile.longitude();
+            geo.put(ordinal, profile.latitude(), profile.longitude());
+        }
+        if (lsh != null) {
+            lsh.put(ordinal, similarityTokens(profile));
+        }
+    }
+
+    public boolean supportsApproximate() {
+        return lsh != null;
+    }
+
+    /**
+     * Drops a user (e.g. their profile was deleted); a no-op if the user is not indexed
+     */
+    public void remove(long userId) {
+        Integer ordinal = ordinals.remove(userId);
+        if (ordinal != null) {
+            clear(ordinal);
+            userIds[ordinal] = REMOVED;
+        }
+    }
+
+    public MatchQuery encode(MatchProfile profile) {
+        return encode(profile, DEFAULT_RADIUS_KM);
+    }
+
+    /**
+     * Encodes a profile against this snapshot's dictionaries. Values unknown to the
+     * snapshot are encoded as "no match" since no indexed user can share them.
+     * Users within {@code radiusKm} are resolved here, once, through the grid.
+     */
+    public MatchQuery encode(MatchProfile profile, double radiusKm) {
+        long[] interestMask = new long[interestWords];
+        for (long interestId : profile.interestIds()) {
+            int code = interests.code(interestId);
+            if (code != NO_CODE) {
+                setBit(interestMask, 0, code);
+            }
+        }
+        long[] languageMask = new long[languageWords];
+        for (String language : MatchProfile.languageTokens(profile.languages())) {
+            int code = languages.code(language);
+            if (code != NO_CODE) {
+                setBit(languageMask, 0, code);
+            }
+        }
+        String travelStyle = MatchProfile.normalize(profile.travelStyle());
+
+        // Sorted (ordinal, proximity points) pairs for score() to binary-search
+        int[] nearbyOrdinals = new int[0];
+        int[] nearbyPoints = new int[0];
+        if (profile.hasCoordinates() && radiusKm > 0) {
+            Map<Integer, Integer> points = new HashMap<>();
+            geo.within(profile.latitude(), profile.longitude(), radiusKm,
+                    (ordinal, distanceKm) -> points.put((int) ordinal, proximityPoints(distanceKm, radiusKm)));
+            nearbyOrdinals = points.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            nearbyPoints = new int[nearbyOrdinals.length];
+            for (int i = 0; i < nearbyOrdinals.length; i++) {
+                nearbyPoints[i] = points.get(nearbyOrdinals[i]);
+            }
+        }
+        return new MatchQuery(
+                profile.userId(),
+                interestMask,
+                toAge(profile.age()),
+                cities.code(MatchProfile.normalize(profile.city())),
+                states.code(MatchProfile.normalize(profile.state())),
+                countries.code(MatchProfile.normalize(profile.country())),
+                languageMask,
+                travelStyle != null,
+                travelStyles.code(travelStyle),
+                travelStyle != null && isFlexible(travelStyle),
+                nearbyOrdinals,
+                nearbyPoints);
+    }
+
+    /**
+     * Weighted similarity between the query and the user at {@code ordinal}; 0 means no shared signal.
+     * Reads only primitive columns and allocates nothing.
+     */
+    public int score(MatchQuery query, int ordinal) {
+        int sharedInterests = 0;
+        int base = ordinal * interestWords;
+        int words = Math.min(interestWords, query.interestMask.length);
+        for (int word = 0; word < words; word++) {
+            sharedInterests += Long.bitCount(interestMasks[base + word] & query.interestMask[word]);
+        }
+        int score = sharedInterests * SHARED_INTEREST_WEIGHT;
+
+        short age = ages[ordinal];
+        if (query.age != NO_AGE && age != NO_AGE && Math.abs(query.age - age) <= SIMILAR_AGE_YEARS) {
+            score += SIMILAR_AGE_WEIGHT;
+        }
+
+        // Location counts once: the better of the text match and proximity
+        int location = 0;
+        if (query.cityId != NO_CODE && query.cityId == cityIds[ordinal]) {
+            location = SAME_CITY_WEIGHT;
+        } else if (query.stateId != NO_CODE && query.stateId == stateIds[ordinal]) {
+            location = SAME_STATE_WEIGHT;
+        } else if (query.countryId != NO_CODE && query.countryId == countryIds[ordinal]) {
+            location = SAME_COUNTRY_WEIGHT;
+        }
+        int nearby = Arrays.binarySearch(query.nearbyOrdinals, ordinal);
+        if (nearby >= 0) {
+            location = Math.max(location, query.nearbyPoints[nearby]);
+        }
+        score += location;
+
+        int commonLanguages = 0;
+        base = ordinal * languageWords;
+        words = Math.min(languageWords, query.languageMask.length);
+        for (int word = 0; word < words; word++) {
+            commonLanguages += Long.bitCount(languageMasks[base + word] & query.languageMask[word]);
+        }
+        score += commonLanguages * COMMON_LANGUAGE_WEIGHT;
+
+        short travelStyle = travelStyleIds[ordinal];
+        if (query.hasTravelStyle && travelStyle != NO_CODE
+                && (query.flexible || travelStyle == query.travelStyle || flexibleTravelStyleCodes.get(travelStyle))) {
+            score += TRAVEL_STYLE_WEIGHT;
+        }
+        return score;
+    }
+
+    /**
+     * The signals behind {@link #score}; only called for the matches actually returned
+     */
+    public Set<MatchReason> reasons(MatchQuery query, int ordinal) {
+        Set<MatchReason> reasons = EnumSet.noneOf(MatchReason.class);
+        int base = ordinal * interestWords;
+        for (int word = 0; word < Math.min(interestWords, query.interestMask.length); word++) {
+            if ((interestMasks[base + word] & query.interestMask[word]) != 0) {
+                reasons.add(MatchReason.SHARED_INTERESTS);
+            }
+        }
+        short age = ages[ordinal];
+        if (query.age != NO_AGE && age != NO_AGE && Math.abs(query.age - age) <= SIMILAR_AGE_YEARS) {
+            reasons.add(MatchReason.SIMILAR_AGE);
+        }
+        if (query.cityId != NO_CODE && query.cityId == cityIds[ordinal]) {
+            reasons.add(MatchReason.SAME_CITY);
+        } else if (Arrays.binarySearch(query.nearbyOrdinals, ordinal) >= 0) {
+            reasons.add(MatchReason.NEARBY);
+        } else if (query.stateId != NO_CODE && query.stateId == stateIds[ordinal]) {
+            reasons.add(MatchReason.SAME_STATE);
+        } else if (query.countryId != NO_CODE && query.countryId == countryIds[ordinal]) {
+            reasons.add(MatchReason.SAME_COUNTRY);
+        }
+        base = ordinal * languageWords;
+        for (int word = 0; word < Math.min(languageWords, query.languageMask.length); word++) {
+            if ((languageMasks[base + word] & query.languageMask[word]) != 0) {
+                reasons.add(MatchReason.COMMON_LANGUAGE);
+            }
+        }
+        short travelStyle = travelStyleIds[ordinal];
+        if (query.hasTravelStyle && travelStyle != NO_CODE
+                && (query.flexible || travelStyle == query.travelStyle || flexibleTravelStyleCodes.get(travelStyle))) {
+            reasons.add(MatchReason.TRAVEL_STYLE);
+        }
+        return reasons;
+    }
+
+    /**
+     * Ids of every indexed user sharing at least one signal (interest, age within 5 years,
+     * city/state/country, within the default radius, language or compatible travel style) with the given profile.
+     * The profile's own user is included if indexed; callers apply their own exclusions.
+     */
+    public List<Long> findCandidateIds(MatchProfile profile) {
+        BitSet candidates = candidateOrdinals(encode(profile));
+        List<Long> candidateIds = new ArrayList<>(candidates.cardinality());
+        for (int ordinal = candidates.nextSetBit(0); ordinal >= 0; ordinal = candidates.nextSetBit(ordinal + 1)) {
+            candidateIds.add(userIds[ordinal]);
+        }
+        return candidateIds;
+    }
+
+    /**
+     * Best {@code limit} candidates ranked by weighted score (ties broken by ascending user id),
+     * starting strictly after {@code after} when paging. Selection uses a heap bounded to
+     * {@code limit + 1} entries, so cost does not grow with the size of the result set.
+     */
+    public MatchPage findTopMatches(MatchProfile profile, Set<Long> excludedUserIds, int limit, MatchCursor after) {
+        return findTopMatches(profile, excludedUserIds, limit, after, DEFAULT_RADIUS_KM);
+    }
+
+    public MatchPage findTopMatches(MatchProfile profile, Set<Long> excludedUserIds, int limit, MatchCursor after,
+                                    double radiusKm) {
+        MatchQuery query = encode(profile, radiusKm);
+        return rank(profile, query, candidateOrdinals(query), excludedUserIds, limit, after);
+    }
+
+    /**
+     * Same ranking as {@link #findTopMatches}, but candidates come from the LSH buckets of the
+     * profile's interest, language and travel style tokens instead of every posting list, so
+     * candidate generation cost does not grow with the number of users. Users similar only in
+     * age or location are found only if they also collide in a bucket.
+     * Requires a snapshot built with {@code approximate = true}.
+     */
+    public MatchPage findApproximateTopMatches(MatchProfile profile, Set<Long> excludedUserIds, int limit,
+                                               MatchCursor after, double radiusKm) {
+        if (lsh == null) {
+            throw new IllegalStateException("Snapshot was built without an LSH index");
+        }
+        MatchQuery query = encode(profile, radiusKm);
+        BitSet candidates = new BitSet(slots);
+        for (int ordinal : lsh.candidates(similarityTokens(profile), LSH_MAX_BUCKET_SCAN, LSH_MAX_CANDIDATES)) {
+            candidates.set(ordinal);
+        }
+        return rank(profile, query, candidates, excludedUserIds, limit, after);
+    }
+
+    private MatchPage rank(MatchProfile profile, MatchQuery query, BitSet candidates, Set<Long> excludedUserIds,
+                           int limit, MatchCursor after) {
+        // Min-heap on rank: the head is the worst match currently kept
+        PriorityQueue<ScoredMatch> heap = new PriorityQueue<>(limit + 1, RANK_ASCENDING);
+
+        for (int ordinal = candidates.nextSetBit(0); ordinal >= 0; ordinal = candidates.nextSetBit(ordinal + 1)) {
+            long userId = userIds[ordinal];
+            if (userId == profile.userId()) continue;
+
+            int score = score(query, ordinal);
+            if (score == 0 || (after != null && !after.precedes(score, userId))) continue;
+            if (heap.size() > limit) {
+                ScoredMatch worst = heap.peek();
+                if (score < worst.score() || (score == worst.score() && userId > worst.userId())) continue;
+            }
+            if (excludedUserIds.contains(userId)) continue;
+
+            heap.add(new ScoredMatch(userId, score));
+            if (heap.size() > limit + 1) {
+                heap.poll();
+            }
+        }
+
+        boolean hasMore = heap.size() > limit;
+        if (hasMore) {
+            heap.poll();
+        }
+        List<ScoredMatch> ranked = new ArrayList<>(heap.size());
+        for (ScoredMatch match : heap) {
+            ranked.add(new ScoredMatch(match.userId(), match.score(), reasons(query, ordinals.get(match.userId()))));
+        }
+        ranked.sort(RANK_ASCENDING.reversed());
+
+        MatchCursor nextCursor = null;
+        if (hasMore && !ranked.isEmpty()) {
+            ScoredMatch last = ranked.get(ranked.size() - 1);
+            nextCursor = new MatchCursor(last.score(), last.userId());
+        }
+        return new MatchPage(ranked, nextCursor);
+    }
+
+    /**
+     * User ids whose indexed attributes differ between this snapshot and {@code other},
+     * including users present in only one of them. Ordinals and dictionary codes may differ
+     * between the two; values are compared after decoding.
+     */
+    public Set<Long> differences(MatchmakingSnapshot other) {
+        Set<Long> userIdsToCheck = new HashSet<>(ordinals.keySet());
+        userIdsToCheck.addAll(other.ordinals.keySet());
+        Set<Long> mismatched = new HashSet<>();
+        for (long userId : userIdsToCheck) {
+            if (!Objects.equals(signature(userId), other.signature(userId))) {
+                mismatched.add(userId);
+            }
+        }
+        return mismatched;
+    }
+
+    private List<Object> signature(long userId) {
+        Integer ordinal = ordinals.get(userId);
+        if (ordinal == null) {
+            return null;
+        }
+        Set<Long> interestIds = new HashSet<>();
+        for (int code = 0; code < interests.size(); code++) {
+            if (testBit(interestMasks, ordinal * interestWords, code)) {
+                interestIds.add(interests.value(code));
+            }
+        }
+        Set<String> languageNames = new HashSet<>();
+        for (int code = 0; code < languages.size(); code++) {
+            if (testBit(languageMasks, ordinal * languageWords, code)) {
+                languageNames.add(languages.value(code));
+            }
+        }
+        return Arrays.asList(interestIds, ages[ordinal], cities.value(cityIds[ordinal]),
+                states.value(stateIds[ordinal]), countries.value(countryIds[ordinal]),
+                languageNames, travelStyles.value(travelStyleIds[ordinal]),
+                latitudes[ordinal], longitudes[ordinal]);
+    }
+
+    private BitSet candidateOrdinals(MatchQuery query) {
+        BitSet candidates = new BitSet(slots);
+
+        for (int code = 0; code < Math.min(interests.size(), query.interestMask.length * 64); code++) {
+            if (testBit(query.interestMask, 0, code)) {
+                candidates.or(interests.posting(code));
+            }
+        }
+        if (query.age != NO_AGE) {
+            for (int age = query.age - SIMILAR_AGE_YEARS; age <= query.age + SIMILAR_AGE_YEARS; age++) {
+                union(candidates, agePostings.get(age));
+            }
+        }
+        union(candidates, cities.postingOrNull(query.cityId));
+        union(candidates, states.postingOrNull(query.stateId));
+        union(candidates, countries.postingOrNull(query.countryId));
+        for (int ordinal : query.nearbyOrdinals) {
+            candidates.set(ordinal);
+        }
+        for (int code = 0; code < Math.min(languages.size(), query.languageMask.length * 64); code++) {
+            if (testBit(query.languageMask, 0, code)) {
+                candidates.or(languages.posting(code));
+            }
+        }
+
+        if (query.hasTravelStyle) {
+            if (query.flexible) {
+                union(candidates, anyTravelStyle);
+            } else {
+                union(candidates, travelStyles.postingOrNull(query.travelStyle));
+                union(candidates, flexibleTravelers);
+            }
+        }
+        return candidates;
+    }
+
+    // Removes the ordinal from every posting list and zeroes its columns
+    private void clear(int ordinal) {
+        int base = ordinal * interestWords;
+        for (int code = 0; code < interests.size(); code++) {
+            if (testBit(interestMasks, base, code)) {
+                interests.posting(code).clear(ordinal);
+            }
+        }
+        Arrays.fill(interestMasks, base, base + interestWords, 0L);
+
+        if (ages[ordinal] != NO_AGE) {
+            agePostings.get((int) ages[ordinal]).clear(ordinal);
+        }
+        ages[ordinal] = NO_AGE;
+
+        cities.unpost(cityIds[ordinal], ordinal);
+        states.unpost(stateIds[ordinal], ordinal);
+        countries.unpost(countryIds[ordinal], ordinal);
+        cityIds[ordinal] = NO_CODE;
+        stateIds[ordinal] = NO_CODE;
+        countryIds[ordinal] = NO_CODE;
+
+        base = ordinal * languageWords;
+        for (int code = 0; code < languages.size(); code++) {
+            if (testBit(languageMasks, base, code)) {
+                languages.posting(code).clear(ordinal);
+            }
+        }
+        Arrays.fill(languageMasks, base, base + languageWords, 0L);
+
+        travelStyles.unpost(travelStyleIds[ordinal], ordinal);
+        travelStyleIds[ordinal] = NO_CODE;
+        anyTravelStyle.clear(ordinal);
+        flexibleTravelers.clear(ordinal);
+
+        geo.remove(ordinal);
+        if (lsh != null) {
+            lsh.remove(ordinal);
+        }
+        latitudes[ordinal] = Double.NaN;
+        longitudes[ordinal] = Double.NaN;
+    }
+
+    private int allocate(long userId) {
+        if (slots == userIds.length) {
+            int capacity = userIds.length + (userIds.length >> 1);
+            userIds = Arrays.copyOf(userIds, capacity);
+            interestMasks = Arrays.copyOf(interestMasks, capacity * interestWords);
+            ages = Arrays.copyOf(ages, capacity);
+            cityIds = Arrays.copyOf(cityIds, capacity);
+            stateIds = Arrays.copyOf(stateIds, capacity);
+            countryIds = Arrays.copyOf(countryIds, capacity);
+            languageMasks = Arrays.copyOf(languageMasks, capacity * languageWords);
+            travelStyleIds = Arrays.copyOf(travelStyleIds, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+        }
+        int ordinal = slots++;
+        userIds[ordinal] = userId;
+        ordinals.put(userId, ordinal);
+        ages[ordinal] = NO_AGE;
+        cityIds[ordinal] = NO_CODE;
+        stateIds[ordinal] = NO_CODE;
+        countryIds[ordinal] = NO_CODE;
+        travelStyleIds[ordinal] = NO_CODE;
+        latitudes[ordinal] = Double.NaN;
+        longitudes[ordinal] = Double.NaN;
+        return ordinal;
+    }
+
+    static boolean isFlexible(String normalizedTravelStyle) {
+        return normalizedTravelStyle.equals("flexible") || normalizedTravelStyle.equals("mixed");
+    }
+
+    // Re-lays out a strided bitmask column with more words per ordinal
+    private static long[] widen(long[] masks, int oldWords, int newWords, int capacity) {
+        long[] widened = new long[capacity * newWords];
+        for (int ordinal = 0; ordinal < capacity; ordinal++) {
+            System.arraycopy(masks, ordinal * oldWords, widened, ordinal * newWords, oldWords);
+        }
+        return widened;
+    }
+
+    // Token set compared by MinHash: interests, languages and travel style
+    static List<String> similarityTokens(MatchProfile profile) {
+        List<String> tokens = new ArrayList<>();
+        for (long interestId : profile.interestIds()) {
+            tokens.add("i:" + interestId);
+        }
+        for (String language : MatchProfile.languageTokens(profile.languages())) {
+            tokens.add("l:" + MatchProfile.normalize(language));
+        }
+        String travelStyle = MatchProfile.normalize(profile.travelStyle());
+        if (travelStyle != null) {
+            tokens.add("t:" + travelStyle);
+        }
+        return tokens;
+    }
+
+    static int proximityPoints(double distanceKm, double radiusKm) {
+        return Math.max(1, (int) Math.round(NEARBY_WEIGHT * (1 - distanceKm / radiusKm)));
+    }
+
+    private static short toAge(Long age) {
+        if (age == null || age < 0) {
+            return NO_AGE;
+        }
+        return (short) Math.min(age, Short.MAX_VALUE);
+    }
+
+    private static void setBit(long[] words, int base, int bit) {
+        words[base + (bit >>> 6)] |= 1L << bit;
+    }
+
+    private static boolean testBit(long[] words, int base, int bit) {
+        return (words[base + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    private static void union(BitSet target, BitSet posting) {
+        if (posting != null) {
+            target.or(posting);
+        }
+    }
+
+    private static final Comparator<ScoredMatch> RANK_ASCENDING = Comparator
+            .comparingInt(ScoredMatch::score)
+            .thenComparing(ScoredMatch::userId, Comparator.reverseOrder());
+
+    // Value <-> dense code mapping with one posting list per code
+    private static final class Dictionary<K> {
+        private final Map<K, Integer> codes = new HashMap<>();
+        private final List<K> values = new ArrayList<>();
+        private final List<BitSet> postings = new ArrayList<>();
+
+        int size() {
+            return values.size();
+        }
+
+        int code(K value) {
+            return value == null ? NO_CODE : codes.getOrDefault(value, NO_CODE);
+        }
+
+        int encode(K value) {
+            return codes.computeIfAbsent(value, v -> {
+                values.add(v);
+                postings.add(new BitSet());
+                return values.size() - 1;
+            });
+        }
+
+        K value(int code) {
+            return code == NO_CODE ? null : values.get(code);
+        }
+
+        BitSet posting(int code) {
+            return postings.get(code);
+        }
+
+        BitSet postingOrNull(int code) {
+            return code == NO_CODE ? null : postings.get(code);
+        }
+
+        int post(K value, int ordinal) {
+            if (value == null) {
+                return NO_CODE;
+            }
+            int code = encode(value);
+            postings.get(code).set(ordinal);
+            return code;
+        }
+
+        void unpost(int code, int ordinal) {
+            if (code != NO_CODE) {
+                postings.get(code).clear(ordinal);
+            }
+        }
+    }
+
+    /**
+     * A profile encoded against one snapshot's dictionaries; only valid while that snapshot is unchanged
+     */
+    public static final class MatchQuery {
+        private final long userId;
+        private final long[] interestMask;
+        private final short age;
+        private final int cityId;
+        private final int stateId;
+        private final int countryId;
+        private final long[] languageMask;
+        private final boolean hasTravelStyle;
+        private final int travelStyle;
+        private final boolean flexible;
+        private final int[] nearbyOrdinals;
+        private final int[] nearbyPoints;
+
+        private MatchQuery(long userId, long[] interestMask, short age, int cityId, int stateId, int countryId,
+                           long[] languageMask, boolean hasTravelStyle, int travelStyle, boolean flexible,
+                           int[] nearbyOrdinals, int[] nearbyPoints) {
+            this.userId = userId;
+            this.interestMask = interestMask;
+            this.age = age;
+            this.cityId = cityId;
+            this.stateId = stateId;
+            this.countryId = countryId;
+            this.languageMask = languageMask;
+            this.hasTravelStyle = hasTravelStyle;
+            this.travelStyle = travelStyle;
+            this.flexible = flexible;
+            this.nearbyOrdinals = nearbyOrdinals;
+            this.nearbyPoints = nearbyPoints;
+        }
+
+        public long userId() {
+            return userId;
+        }
+    }
+
+    public record ScoredMatch(long userId, int score, Set<MatchReason> reasons) {
+        ScoredMatch(long userId, int score) {
+            this(userId, score, Set.of());
+        }
+    }
+
+    public record MatchPage(List<ScoredMatch> matches, MatchCursor nextCursor) {
+    }
+}
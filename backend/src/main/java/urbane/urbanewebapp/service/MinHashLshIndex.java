@@ -0,0 +1,216 @@
+package urbane.urbanewebapp.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Locality-sensitive hashing over token sets (MinHash with banding).
+ * Each id gets {@code bands * rows} MinHash values; every band of {@code rows} values is hashed
+ * to a bucket key. Ids whose token sets have Jaccard similarity s collide in at least one band
+ * with probability 1 - (1 - s^rows)^bands, so a lookup only visits {@code bands} buckets,
+ * regardless of how many ids are indexed.
+ *
+ * Ids are small non-negative ints (the snapshot's ordinals). Not thread-safe.
+ */
+public class MinHashLshIndex {
+
+    private static final long NO_KEY = 0L;
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    // Per id and band: the bucket key and the id's position in that bucket, for O(1) removal
+    private long[] bandKeys = new long[0];
+    private int[] positions = new int[0];
+    private final BitSet indexed = new BitSet();
+
+    public MinHashLshIndex(int bands, int rows, long seed) {
+        this.bands = bands;
+        this.rows = rows;
+        SplittableRandom random = new SplittableRandom(seed);
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    public int size() {
+        return indexed.cardinality();
+    }
+
+    /**
+     * Indexes (or re-indexes) an id; an empty token set leaves it unindexed
+     */
+    public void put(int id, Collection<String> tokens) {
+        remove(id);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        ensureCapacity(id);
+        long[] keys = bandKeys(signature(tokens));
+        for (int band = 0; band < bands; band++) {
+            Bucket bucket = buckets.computeIfAbsent(keys[band], k -> new Bucket());
+            bandKeys[id * bands + band] = keys[band];
+            positions[id * bands + band] = bucket.size;
+            bucket.add(id);
+        }
+        indexed.set(id);
+    }
+
+    public void remove(int id) {
+        if (!indexed.get(id)) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            long key = bandKeys[id * bands + band];
+            Bucket bucket = buckets.get(key);
+            int position = positions[id * bands + band];
+            int moved = bucket.removeAt(position);
+            if (moved >= 0) {
+                positions[moved * bands + band] = position;
+            }
+            if (bucket.size == 0) {
+                buckets.remove(key);
+            }
+            bandKeys[id * bands + band] = NO_KEY;
+        }
+        indexed.clear(id);
+    }
+
+    /**
+     * Ids sharing at least one band with the token set, most shared bands first (a proxy for
+     * Jaccard similarity). At most {@code maxBucketScan} ids are read from each bucket and at most
+     * {@code maxCandidates} are returned, so the cost is bounded independently of the index size.
+     * A larger bucket is read as a window starting at an offset hashed from the query and the bucket, so
+     * ids added late are as likely to be read as early ones; the same query always reads the same window,
+     * which keeps its pages consistent.
+     */
+    public int[] candidates(Collection<String> tokens, int maxBucketScan, int maxCandidates) {
+        if (tokens.isEmpty()) {
+            return new int[0];
+        }
+        long[] keys = bandKeys(signature(tokens));
+        long queryHash = 0;
+        for (long key : keys) {
+            queryHash = mix(queryHash * 31 + key);
+        }
+        int[] scanned = new int[bands * maxBucketScan];
+        int scannedCount = 0;
+        for (long key : keys) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) continue;
+            int scan = Math.min(bucket.size, maxBucketScan);
+            int start = scan == bucket.size ? 0 : (int) Math.floorMod(mix(queryHash ^ key), (long) bucket.size);
+            // The window wraps around the end of the bucket
+            int head = Math.min(scan, bucket.size - start);
+            System.arraycopy(bucket.ids, start, scanned, scannedCount, head);
+            System.arraycopy(bucket.ids, 0, scanned, scannedCount + head, scan - head);
+            scannedCount += scan;
+        }
+
+        // Collapse runs of the sorted ids into (id, shared bands), then emit by descending count
+        Arrays.sort(scanned, 0, scannedCount);
+        int[] ids = new int[scannedCount];
+        int[] counts = new int[scannedCount];
+        int unique = 0;
+        for (int i = 0; i < scannedCount; i++) {
+            if (unique > 0 && ids[unique - 1] == scanned[i]) {
+                counts[unique - 1]++;
+            } else {
+                ids[unique] = scanned[i];
+                counts[unique++] = 1;
+            }
+        }
+        int[] candidates = new int[Math.min(unique, maxCandidates)];
+        int emitted = 0;
+        for (int count = bands; count >= 1 && emitted < candidates.length; count--) {
+            for (int i = 0; i < unique && emitted < candidates.length; i++) {
+                if (counts[i] == count) {
+                    candidates[emitted++] = ids[i];
+                }
+            }
+        }
+        return candidates;
+    }
+
+    long[] signature(Collection<String> tokens) {
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String token : tokens) {
+            long tokenHash = fnv1a(token);
+            for (int i = 0; i < seeds.length; i++) {
+                long hash = mix(tokenHash ^ seeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long[] bandKeys(long[] signature) {
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = mix(band + 1);
+            for (int row = 0; row < rows; row++) {
+                key = mix(key * 31 + signature[band * rows + row]);
+            }
+            keys[band] = key == NO_KEY ? 1L : key;
+        }
+        return keys;
+    }
+
+    private void ensureCapacity(int id) {
+        int needed = (id + 1) * bands;
+        if (needed > bandKeys.length) {
+            int capacity = Math.max(needed, bandKeys.length + (bandKeys.length >> 1));
+            bandKeys = Arrays.copyOf(bandKeys, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+    }
+
+    private static long fnv1a(String token) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            hash ^= token.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Ids of one bucket; removal moves the last id into the hole
+    private static final class Bucket {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        // Returns the id moved into the removed position, or -1 if none moved
+        int removeAt(int position) {
+            size--;
+            if (position == size) {
+                return -1;
+            }
+            ids[position] = ids[size];
+            return ids[position];
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package urbane.urbanewebapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in a distance-sorted list: the distance and id of the last item returned.
+ * Serialized as an opaque URL-safe token for the {@code cursor} query parameter.
+ */
+public record NearbyCursor(double distanceKm, long id) {
+
+    /**
+     * True if an item at this distance and id sorts strictly after the cursor
+     */
+    public boolean precedes(double otherDistanceKm, long otherId) {
+        int byDistance = Double.compare(otherDistanceKm, distanceKm);
+        return byDistance > 0 || (byDistance == 0 && otherId > id);
+    }
+
+    public String encode() {
+        String raw = Double.toString(distanceKm) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static NearbyCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            return new NearbyCursor(Double.parseDouble(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package urbane.urbanewebapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
+import urbane.urbanewebapp.model.UserEventId;
+import urbane.urbanewebapp.model.WaitlistEntry;
+import urbane.urbanewebapp.repository.EventRepository;
+import urbane.urbanewebapp.repository.UserEventRepository;
+import urbane.urbanewebapp.repository.WaitlistEntryRepository;
+
+import java.util.List;
+
+/**
+ * RSVP writes. Each join or withdrawal changes user_events and the event's attendee_count
+ * in one transaction, with the counter moved by an atomic UPDATE rather than read-modify-write;
+ * for joins that UPDATE also enforces the capacity.
+ * Joins to a full event can wait in a FIFO waitlist; seats freed by withdrawals are handed to its head.
+ * Every write locks the event row first, then the waitlist, then user_events, so a join can't deadlock
+ * with the promotion of the same user.
+ * A scheduled reconciliation repairs any drift between the counter and user_events.
+ */
+@Service
+public class RsvpService {
+
+    @Autowired
+    private UserEventRepository userEventRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private WaitlistEntryRepository waitlistEntryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public enum JoinOutcome { JOINED, FULL, ALREADY_JOINED }
+
+    /**
+     * Reserves a seat with a conditional UPDATE on attendee_count, then inserts the RSVP; a duplicate join rolls
+     * the seat back, and a full event still reports a user who already joined. Taking the event row first keeps
+     * the lock order of promotions, which hold it while they insert the RSVP of a waiting user.
+     * A user who was on the waitlist leaves it.
+     */
+    @Transactional
+    public JoinOutcome join(long userId, long eventId) {
+        if (eventRepository.reserveSeat(eventId) == 0) {
+            return userEventRepository.existsById(new UserEventId(userId, eventId))
+                    ? JoinOutcome.ALREADY_JOINED
+                    : JoinOutcome.FULL;
+        }
+        waitlistEntryRepository.deleteEntry(userId, eventId);
+        if (userEventRepository.insertRsvpIfAbsent(userId, eventId) == 0) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return JoinOutcome.ALREADY_JOINED;
+        }
+        return JoinOutcome.JOINED;
+    }
+
+    /**
+     * Puts the user at the back of a full event's waitlist and returns their 1-based position, or 0 if a seat
+     * had freed up in the meantime and the waitlist was promoted up to and including them.
+     */
+    @Transactional
+    public long joinWaitlist(long userId, long eventId) {
+        eventRepository.lockById(eventId);
+        waitlistEntryRepository.insertIfAbsent(userId, eventId);
+        promoteWaitlist(eventId);
+        return waitlistEntryRepository.findPosition(userId, eventId);
+    }
+
+    /**
+     * Removes the user's RSVP, or their waitlist entry if they were waiting. A freed seat goes to the head of the
+     * waitlist in the same transaction when {@code promote} is set. Returns true if the user was attending.
+     */
+    @Transactional
+    public boolean withdraw(long userId, long eventId, boolean promote) {
+        eventRepository.lockById(eventId);
+        if (userEventRepository.deleteRsvp(userId, eventId) == 0) {
+            waitlistEntryRepository.deleteEntry(userId, eventId);
+            return false;
+        }
+        eventRepository.decrementAttendeeCount(eventId);
+        if (promote) {
+            promoteWaitlist(eventId);
+        }
+        return true;
+    }
+
+    /**
+     * Gives free seats to waiting users in FIFO order; returns the number promoted. Runs with the event row
+     * already locked by the caller, and locks the waitlist head before inserting its RSVP.
+     */
+    private int promoteWaitlist(long eventId) {
+        int promoted = 0;
+        while (eventRepository.reserveSeat(eventId) > 0) {
+            List<WaitlistEntry> head = waitlistEntryRepository.findHeadForUpdate(eventId, PageRequest.of(0, 1));
+            if (head.isEmpty()) {
+                eventRepository.decrementAttendeeCount(eventId);
+                break;
+            }
+            WaitlistEntry entry = head.get(0);
+            waitlistEntryRepository.delete(entry);
+            if (userEventRepository.insertRsvpIfAbsent(entry.getUserId(), eventId) == 0) {
+                // Joined some other way while waiting; the seat stays free for the next entry
+                eventRepository.decrementAttendeeCount(eventId);
+            } else {
+                promoted++;
+            }
+        }
+        return promoted;
+    }
+
+    /**
+     * Repairs drifted attendee counts one event at a time, each in its own short transaction that locks the
+     * event row before counting, so RSVPs in flight are either fully counted or not yet started.
+     */
+    @Scheduled(fixedDelayString = "${events.attendee-count.reconcile-interval-ms:3600000}")
+    public void reconcileAttendeeCounts() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int repaired = 0;
+        for (Long eventId : eventRepository.findDriftedAttendeeCountIds()) {
+            Integer updated = transaction.execute(status -> {
+                if (eventRepository.lockById(eventId) == null) {
+                    return 0;
+                }
+                return eventRepository.reconcileAttendeeCount(eventId);
+            });
+            repaired += updated == null ? 0 : updated;
+        }
+        if (repaired > 0) {
+            System.out.println("Attendee counts repaired for " + repaired + " events");
+        }
+    }
+}
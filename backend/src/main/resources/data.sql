@@ -15,3 +15,19 @@ INSERT INTO interests (name) VALUES
                                  ('Festivals'),
                                  ('Wellness & Yoga'),
                                  ('Art & Galleries');
+
+-- One friend_connections row per unordered user pair, so send/reject can upsert with ON CONFLICT.
+-- Pending requests sent both ways before the index existed are a mutual match; other duplicates keep the oldest row.
+UPDATE friend_connections a SET status = 'ACCEPTED'
+FROM friend_connections b
+WHERE a.requester_id = b.receiver_id AND a.receiver_id = b.requester_id
+  AND a.status = 'PENDING' AND b.status = 'PENDING';
+
+DELETE FROM friend_connections a
+USING friend_connections b
+WHERE LEAST(a.requester_id, a.receiver_id) = LEAST(b.requester_id, b.receiver_id)
+  AND GREATEST(a.requester_id, a.receiver_id) = GREATEST(b.requester_id, b.receiver_id)
+  AND a.connection_id > b.connection_id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_friend_connections_pair
+    ON friend_connections (LEAST(requester_id, receiver_id), GREATEST(requester_id, receiver_id));
@@ -0,0 +1,149 @@
+package urbane.urbanewebapp.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.model.Location;
+import urbane.urbanewebapp.model.Profile;
+import urbane.urbanewebapp.model.User;
+import urbane.urbanewebapp.model.UserEvent;
+import urbane.urbanewebapp.model.UserEventId;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@DataJpaTest(showSql = false)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class EventRepositoryTest {
+
+    private static final int CREATORS = 5;
+    private static final int EVENTS_PER_CREATOR = 4;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < CREATORS; i++) {
+            Location location = new Location();
+            location.setCity("Boston");
+            location.setState("MA");
+            location.setCountry("US");
+            entityManager.persist(location);
+
+            User creator = new User();
+            creator.setEmail("creator" + i + "@example.com");
+            entityManager.persist(creator);
+
+            Profile profile = new Profile();
+            profile.setUser(creator);
+            profile.setFirstName("Creator" + i);
+            profile.setLocation(location);
+            entityManager.persist(profile);
+
+            for (int j = 0; j < EVENTS_PER_CREATOR; j++) {
+                Event event = new Event();
+                event.setTitle("Event " + i + "-" + j);
+                event.setCreator(creator);
+                event.setState("MA");
+                event.setCity("Boston");
+                event.setDate("2030-01-0" + (j + 1) + "T18:00");
+                entityManager.persist(event);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void listingsLoadCreatorProfileAndLocationInOneStatement() {
+        assertSingleStatement(() -> eventRepository.findEventsByState("MA"));
+        assertSingleStatement(() -> eventRepository.findEventsByStateAndCity("MA", "Boston"));
+        assertSingleStatement(() -> eventRepository.findPage(0L, "ma", null, "2030-01-01", "2030-01-03", false,
+                PageRequest.of(0, 100)));
+        assertSingleStatement(() -> eventRepository.findPage(0L, null, null, null, null, true,
+                PageRequest.of(0, 100)));
+    }
+
+    @Test
+    void reconciliationRepairsAttendeeCountsReadInOneStatement() {
+        List<Event> events = eventRepository.findEventsByState("MA");
+        List<User> attendees = entityManager.createQuery("SELECT u FROM User u", User.class).getResultList();
+        // RSVPs written without touching the counters: the first event gets every creator, the second one
+        for (int i = 0; i < attendees.size(); i++) {
+            join(attendees.get(i), events.get(0), true);
+        }
+        join(attendees.get(0), events.get(1), true);
+        join(attendees.get(1), events.get(1), false);
+        entityManager.flush();
+        eventRepository.reserveSeat(events.get(2).getId());
+
+        List<Long> drifted = eventRepository.findDriftedAttendeeCountIds();
+        assertEquals(3, drifted.size());
+        for (Long eventId : drifted) {
+            assertEquals(eventId, eventRepository.lockById(eventId));
+            assertEquals(1, eventRepository.reconcileAttendeeCount(eventId));
+        }
+        assertEquals(0, eventRepository.reconcileAttendeeCount(events.get(0).getId()));
+        assertEquals(List.of(), eventRepository.findDriftedAttendeeCountIds());
+        eventRepository.decrementAttendeeCount(events.get(1).getId());
+        eventRepository.decrementAttendeeCount(events.get(1).getId());
+
+        statistics.clear();
+        Map<Long, Long> counts = eventRepository.attendeeCountsByIds(
+                events.stream().map(Event::getId).collect(Collectors.toList()));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(events.size(), counts.size());
+        assertEquals(CREATORS, counts.get(events.get(0).getId()));
+        assertEquals(0L, counts.get(events.get(1).getId()));
+        assertEquals(0L, counts.get(events.get(2).getId()));
+    }
+
+    private void join(User user, Event event, boolean rsvpStatus) {
+        UserEvent userEvent = new UserEvent();
+        userEvent.setId(new UserEventId(user.getId(), event.getId()));
+        userEvent.setUser(user);
+        userEvent.setEvent(event);
+        userEvent.setRsvpStatus(rsvpStatus);
+        entityManager.persist(userEvent);
+    }
+
+    private void assertSingleStatement(Supplier<List<Event>> listing) {
+        entityManager.clear();
+        statistics.clear();
+        List<Event> events = listing.get();
+        assertFalse(events.isEmpty());
+        // The same walk as EventController.buildEventMap
+        for (Event event : events) {
+            event.getCreator().getProfile().getLocation().getCity();
+        }
+        assertEquals(1, statistics.getPrepareStatementCount(), "statements for " + events.size() + " events");
+    }
+}
@@ -0,0 +1,188 @@
+package urbane.urbanewebapp.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import urbane.urbanewebapp.model.User;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The friend request upserts rely on an expression index, ON CONFLICT ... DO UPDATE and xmax, none of which
+ * H2 supports, so these tests run against an embedded PostgreSQL with the schema from Hibernate and data.sql.
+ * Every upsert commits on its own, so the tests run outside a transaction and clean up after themselves.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FriendConnectionRepositoryTest {
+
+    @TestConfiguration
+    static class EmbeddedPostgresConfig {
+
+        @Bean(destroyMethod = "close")
+        EmbeddedPostgres embeddedPostgres() throws IOException {
+            return EmbeddedPostgres.start();
+        }
+
+        @Bean
+        DataSource dataSource(EmbeddedPostgres embeddedPostgres) {
+            return embeddedPostgres.getPostgresDatabase();
+        }
+    }
+
+    @Autowired
+    private FriendConnectionRepository friendConnectionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            User user = new User();
+            user.setEmail("friend" + i + "@example.com");
+            users.add(user);
+        }
+        userRepository.saveAll(users).forEach(user -> userIds.add(user.getId()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM friend_connections");
+        userRepository.deleteAllById(userIds);
+    }
+
+    @Test
+    void sendAcceptAndRejectMoveOneRowPerPair() {
+        long alice = userIds.get(0);
+        long bob = userIds.get(1);
+
+        Object[] sent = friendConnectionRepository.upsertFriendRequest(alice, bob).get(0);
+        assertEquals("PENDING", sent[1]);
+        assertNull(sent[2]);
+        assertTrue((Boolean) sent[3]);
+
+        // Sending again doesn't accept your own request
+        Object[] resent = friendConnectionRepository.upsertFriendRequest(alice, bob).get(0);
+        assertEquals(sent[0], resent[0]);
+        assertEquals("PENDING", resent[1]);
+        assertEquals("PENDING", resent[2]);
+        assertFalse((Boolean) resent[3]);
+
+        // The other user sending back accepts it
+        Object[] accepted = friendConnectionRepository.upsertFriendRequest(bob, alice).get(0);
+        assertEquals(sent[0], accepted[0]);
+        assertEquals("ACCEPTED", accepted[1]);
+        assertEquals("PENDING", accepted[2]);
+        assertFalse((Boolean) accepted[3]);
+
+        Object[] rejected = friendConnectionRepository.upsertRejection(bob, alice).get(0);
+        assertEquals(sent[0], rejected[0]);
+        assertFalse((Boolean) rejected[1]);
+        assertEquals("REJECTED", statusOf(alice, bob));
+        // A rejected pair stays rejected when either side sends again
+        assertEquals("REJECTED", friendConnectionRepository.upsertFriendRequest(alice, bob).get(0)[1]);
+
+        // Skipping someone with no row yet inserts the rejection
+        assertTrue((Boolean) friendConnectionRepository.upsertRejection(userIds.get(2), userIds.get(3)).get(0)[1]);
+        assertEquals(2L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friend_connections", Long.class));
+    }
+
+    @Test
+    void concurrentSendsBothWaysLeaveOneAcceptedRow() throws Exception {
+        long alice = userIds.get(0);
+        long bob = userIds.get(1);
+        int senders = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(senders);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object[]>> sends = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            boolean fromAlice = i % 2 == 0;
+            sends.add(pool.submit(() -> {
+                start.await();
+                return fromAlice
+                        ? friendConnectionRepository.upsertFriendRequest(alice, bob).get(0)
+                        : friendConnectionRepository.upsertFriendRequest(bob, alice).get(0);
+            }));
+        }
+        start.countDown();
+        int inserted = 0;
+        for (Future<Object[]> send : sends) {
+            if ((Boolean) send.get()[3]) {
+                inserted++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(1, inserted);
+        assertEquals(1L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friend_connections", Long.class));
+        assertEquals("ACCEPTED", statusOf(alice, bob));
+    }
+
+    @Test
+    void migrationCollapsesDuplicatePairsBeforeAddingTheIndex() {
+        long alice = userIds.get(0);
+        long bob = userIds.get(1);
+        long carol = userIds.get(2);
+        // Rows as they could exist before the index: requests sent both ways, and a pair stored twice
+        jdbcTemplate.execute("DROP INDEX uq_friend_connections_pair");
+        insertConnection(alice, bob, "PENDING");
+        insertConnection(bob, alice, "PENDING");
+        insertConnection(alice, carol, "REJECTED");
+        insertConnection(carol, alice, "ACCEPTED");
+
+        new ResourceDatabasePopulator(new ClassPathResource("data.sql")).execute(dataSource);
+
+        assertEquals(2L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friend_connections", Long.class));
+        assertEquals("ACCEPTED", statusOf(alice, bob));
+        // The oldest row of a duplicated pair is kept
+        assertEquals("REJECTED", statusOf(alice, carol));
+        assertFalse((Boolean) friendConnectionRepository.upsertFriendRequest(carol, alice).get(0)[3]);
+    }
+
+    private void insertConnection(long requesterId, long receiverId, String status) {
+        jdbcTemplate.update("INSERT INTO friend_connections (requester_id, receiver_id, status) VALUES (?, ?, ?)",
+                requesterId, receiverId, status);
+    }
+
+    private String statusOf(long userId1, long userId2) {
+        return jdbcTemplate.queryForObject("SELECT status FROM friend_connections " +
+                "WHERE LEAST(requester_id, receiver_id) = LEAST(?, ?) AND GREATEST(requester_id, receiver_id) = GREATEST(?, ?)",
+                String.class, userId1, userId2, userId1, userId2);
+    }
+}
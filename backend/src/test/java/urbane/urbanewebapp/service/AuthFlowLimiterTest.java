@@ -0,0 +1,101 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuthFlowLimiterTest {
+
+    private final AuthFlowLimiter limiter = new AuthFlowLimiter();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(limiter, "loginMaxConcurrent", 2);
+        ReflectionTestUtils.setField(limiter, "loginTimeoutMs", 100L);
+        ReflectionTestUtils.setField(limiter, "registerMaxConcurrent", 1);
+        ReflectionTestUtils.setField(limiter, "registerTimeoutMs", 10_000L);
+        ReflectionTestUtils.setField(limiter, "confirmMaxConcurrent", 1);
+        ReflectionTestUtils.setField(limiter, "confirmTimeoutMs", 10_000L);
+        ReflectionTestUtils.setField(limiter, "dbExecutorThreads", 1);
+        ReflectionTestUtils.setField(limiter, "dbExecutorQueueCapacity", 1);
+        ReflectionTestUtils.invokeMethod(limiter, "initFlows");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(limiter, "stopDatabaseExecutor");
+    }
+
+    @Test
+    void fullBulkheadRejectsUntilACallFinishes() throws Exception {
+        CompletableFuture<String> slowSignup = new CompletableFuture<>();
+        CompletableFuture<String> first = limiter.run(AuthFlowLimiter.REGISTER, () -> slowSignup);
+
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> limiter.run(AuthFlowLimiter.REGISTER, () -> CompletableFuture.completedFuture("second")).get());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+        // Other flows have their own bulkhead
+        assertEquals("confirmed", limiter.run(AuthFlowLimiter.CONFIRM, () -> CompletableFuture.completedFuture("confirmed")).get());
+
+        slowSignup.complete("first");
+        assertEquals("first", first.get());
+        assertEquals("third", limiter.run(AuthFlowLimiter.REGISTER, () -> CompletableFuture.completedFuture("third")).get());
+    }
+
+    @Test
+    void timedOutCallsKeepTheirPermitUntilTheyFinish() throws Exception {
+        CompletableFuture<String> hung = new CompletableFuture<>();
+        CompletableFuture<String> timedOut = limiter.run(AuthFlowLimiter.LOGIN, () -> hung);
+        CompletableFuture<String> alsoHung = new CompletableFuture<>();
+        limiter.run(AuthFlowLimiter.LOGIN, () -> alsoHung);
+
+        ExecutionException timeout = assertThrows(ExecutionException.class, timedOut::get);
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        // The Cognito call itself is still running, so it still holds its permit
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> limiter.run(AuthFlowLimiter.LOGIN, () -> CompletableFuture.completedFuture("next")).get());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+        hung.complete("late");
+        assertEquals("next", limiter.run(AuthFlowLimiter.LOGIN, () -> CompletableFuture.completedFuture("next")).get());
+    }
+
+    @Test
+    void databaseWorkLeavesTheCompletingThreadAndIsBounded() throws Exception {
+        CompletableFuture<String> cognitoCall = new CompletableFuture<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> login = limiter.run(AuthFlowLimiter.LOGIN, () -> cognitoCall
+                .thenApplyAsync(sub -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Thread.currentThread().getName();
+                }, limiter.databaseExecutor()));
+        cognitoCall.complete("sub");
+
+        // One thread busy and one task queued: the next one fails its future rather than waiting
+        CompletableFuture<String> queued = CompletableFuture.completedFuture("sub")
+                .thenApplyAsync(sub -> "queued", limiter.databaseExecutor());
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> CompletableFuture.completedFuture("sub")
+                .thenApplyAsync(sub -> "rejected", limiter.databaseExecutor()).get());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+        release.countDown();
+        assertTrue(login.get().startsWith("auth-db-"));
+        assertEquals("queued", queued.get());
+    }
+}
@@ -0,0 +1,225 @@
+package urbane.urbanewebapp.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CognitoJwtServiceTest {
+
+    private static final String ISSUER = "https://cognito-idp.us-east-1.amazonaws.com/us-east-1_pool";
+
+    static {
+        // Without it the stub's kept-alive responses wait on delayed ACKs (~40 ms each)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Map<String, KeyPair> keys = new LinkedHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    // Requests the stub answers with a 500 before serving the keys
+    private final AtomicInteger failures = new AtomicInteger();
+    private HttpServer server;
+    private CognitoJwtService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/jwks.json", exchange -> {
+            requests.incrementAndGet();
+            if (failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = jwks().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        service = new CognitoJwtService();
+        ReflectionTestUtils.setField(service, "userPoolId", "us-east-1_pool");
+        ReflectionTestUtils.setField(service, "region", "us-east-1");
+        ReflectionTestUtils.setField(service, "jwksUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/jwks.json");
+        ReflectionTestUtils.setField(service, "minRefetchIntervalMs", 500L);
+        ReflectionTestUtils.setField(service, "timeoutMs", 5000);
+        ReflectionTestUtils.setField(service, "claimsCacheMaxEntries", 1000L);
+        ReflectionTestUtils.invokeMethod(service, "initClaimsCache");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void verifiesFromCachedKeysAndMeasuresThroughput() {
+        addKey("a");
+        String token = sign("a", "user-1");
+
+        assertEquals("user-1", service.getSubFromToken(token));
+        int iterations = 2_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            service.verifyToken(token);
+        }
+        double cachedPerSecond = iterations / ((System.nanoTime() - start) / 1e9);
+        assertEquals(1, requests.get());
+
+        // The previous behaviour: download the JWKS and rebuild the verifier for every token
+        int uncachedIterations = 200;
+        start = System.nanoTime();
+        for (int i = 0; i < uncachedIterations; i++) {
+            service.refreshKeys();
+            service.verifyToken(token);
+        }
+        double uncachedPerSecond = uncachedIterations / ((System.nanoTime() - start) / 1e9);
+
+        int claimsIterations = 50_000;
+        start = System.nanoTime();
+        for (int i = 0; i < claimsIterations; i++) {
+            service.getSubFromToken(token);
+        }
+        double claimsPerSecond = claimsIterations / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("JWT verifications/s: %.0f from cached claims, %.0f with cached keys, %.0f fetching the JWKS per token%n",
+                claimsPerSecond, cachedPerSecond, uncachedPerSecond);
+    }
+
+    @Test
+    void cachedClaimsSkipVerificationUntilTheTokenExpires() throws Exception {
+        addKey("a");
+        KeyPair pair;
+        synchronized (keys) {
+            pair = keys.get("a");
+        }
+        String token = JWT.create().withKeyId("a").withIssuer(ISSUER).withSubject("user-1")
+                .withClaim("email", "user1@example.com")
+                .withExpiresAt(Instant.now().plusSeconds(1))
+                .sign(Algorithm.RSA256((RSAPublicKey) pair.getPublic(), (RSAPrivateKey) pair.getPrivate()));
+        assertEquals("user-1", service.getSubFromToken(token));
+
+        // Without any keys, only a cached token still resolves
+        ReflectionTestUtils.setField(service, "verifiers", Map.of());
+        ReflectionTestUtils.setField(service, "minRefetchIntervalMs", Long.MAX_VALUE);
+        assertEquals("user1@example.com", service.getEmailFromToken(token));
+        assertNull(service.getSubFromToken(sign("a", "user-2")));
+
+        // Once expired (exp has second precision and is checked against the truncated clock), the entry is gone
+        // and the token is verified, and rejected, again
+        Thread.sleep(2100);
+        ReflectionTestUtils.setField(service, "minRefetchIntervalMs", 0L);
+        assertNull(service.getSubFromToken(token));
+    }
+
+    @Test
+    void unknownKidRefetchesAtMostOncePerInterval() throws Exception {
+        addKey("a");
+        KeyPair next = generateKeyPair();
+        KeyPair forged = generateKeyPair();
+        service.verifyToken(sign("a", "user-1"));
+        assertEquals(1, requests.get());
+
+        // Rotated keys are picked up by a refetch, but not until the rate limit allows one
+        synchronized (keys) {
+            keys.put("b", next);
+        }
+        String rotated = sign("b", "user-2");
+        assertThrows(JWTVerificationException.class, () -> service.verifyToken(rotated));
+        assertEquals(1, requests.get());
+
+        Thread.sleep(600);
+        assertEquals("user-2", service.getSubFromToken(rotated));
+        assertEquals(2, requests.get());
+
+        // Made-up key ids can't force repeated downloads
+        String bogus = JWT.create().withKeyId("unknown").withIssuer(ISSUER).withSubject("user-3")
+                .sign(Algorithm.RSA256((RSAPublicKey) forged.getPublic(), (RSAPrivateKey) forged.getPrivate()));
+        for (int i = 0; i < 50; i++) {
+            assertThrows(JWTVerificationException.class, () -> service.verifyToken(bogus));
+        }
+        assertEquals(2, requests.get());
+        assertEquals("user-1", service.getSubFromToken(sign("a", "user-1")));
+    }
+
+    @Test
+    void failedFirstFetchDoesNotStartTheRateLimit() {
+        addKey("a");
+        failures.set(1);
+        String token = sign("a", "user-1");
+
+        assertNull(service.getSubFromToken(token));
+        assertEquals("user-1", service.getSubFromToken(token));
+        assertEquals(2, requests.get());
+    }
+
+    private void addKey(String kid) {
+        synchronized (keys) {
+            keys.put(kid, generateKeyPair());
+        }
+    }
+
+    private String sign(String kid, String subject) {
+        KeyPair pair;
+        synchronized (keys) {
+            pair = keys.get(kid);
+        }
+        return JWT.create().withKeyId(kid).withIssuer(ISSUER).withSubject(subject)
+                .sign(Algorithm.RSA256((RSAPublicKey) pair.getPublic(), (RSAPrivateKey) pair.getPrivate()));
+    }
+
+    private String jwks() {
+        List<String> entries = new ArrayList<>();
+        synchronized (keys) {
+            keys.forEach((kid, pair) -> {
+                RSAPublicKey publicKey = (RSAPublicKey) pair.getPublic();
+                entries.add(String.format("{\"kid\":\"%s\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"n\":\"%s\",\"e\":\"%s\"}",
+                        kid, base64Url(publicKey.getModulus()), base64Url(publicKey.getPublicExponent())));
+            });
+        }
+        return "{\"keys\":[" + String.join(",", entries) + "]}";
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package urbane.urbanewebapp.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.InitiateAuthResponse;
+import urbane.urbanewebapp.config.CognitoClientConfig;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CognitoServiceTest {
+
+    private static final String AUTH_RESULT = "{\"AuthenticationResult\":{\"AccessToken\":\"access\",\"IdToken\":\"id\"," +
+            "\"RefreshToken\":\"refresh\",\"ExpiresIn\":3600,\"TokenType\":\"Bearer\"}}";
+
+    static {
+        // Without it the stub's kept-alive responses wait on delayed ACKs (~40 ms each)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    // Client ports seen by the stub, i.e. TCP connections opened to it
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private ExecutorService stubThreads;
+    private String endpoint;
+    private CognitoIdentityProviderClient sharedClient;
+    private CognitoIdentityProviderAsyncClient asyncClient;
+    // Holds InitiateAuth responses back until released
+    private volatile CountDownLatch authGate = new CountDownLatch(0);
+    private CognitoService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Signing needs some credentials, even for the unauthenticated Cognito calls
+        System.setProperty("aws.accessKeyId", "test");
+        System.setProperty("aws.secretAccessKey", "test");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            try {
+                authGate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = (target != null && target.endsWith(".InitiateAuth") ? AUTH_RESULT : "{}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.1");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stubThreads = Executors.newCachedThreadPool();
+        server.setExecutor(stubThreads);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        CognitoClientConfig config = new CognitoClientConfig();
+        ReflectionTestUtils.setField(config, "region", "us-east-1");
+        ReflectionTestUtils.setField(config, "endpoint", endpoint);
+        ReflectionTestUtils.setField(config, "maxConnections", 10);
+        ReflectionTestUtils.setField(config, "connectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(config, "socketTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(config, "connectionMaxIdleMs", 60000L);
+        ReflectionTestUtils.setField(config, "apiCallTimeoutMs", 10000L);
+        sharedClient = config.cognitoIdentityProviderClient();
+        asyncClient = config.cognitoIdentityProviderAsyncClient();
+
+        service = new CognitoService();
+        ReflectionTestUtils.setField(service, "cognitoClient", sharedClient);
+        ReflectionTestUtils.setField(service, "cognitoAsyncClient", asyncClient);
+        ReflectionTestUtils.setField(service, "clientId", "client");
+        ReflectionTestUtils.setField(service, "userPoolId", "us-east-1_pool");
+    }
+
+    @AfterEach
+    void tearDown() {
+        sharedClient.close();
+        asyncClient.close();
+        server.stop(0);
+        stubThreads.shutdownNow();
+        System.clearProperty("aws.accessKeyId");
+        System.clearProperty("aws.secretAccessKey");
+    }
+
+    @Test
+    void sharedClientReusesConnectionsAcrossLogins() {
+        int logins = 100;
+        // Warm up class loading and the JIT for both paths before timing them
+        for (int i = 0; i < 20; i++) {
+            service.initiateAuth("user@example.com", "password");
+            loginWithNewClient();
+        }
+
+        connections.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            InitiateAuthResponse response = service.initiateAuth("user@example.com", "password");
+            assertEquals("access", response.authenticationResult().accessToken());
+        }
+        double sharedMs = (System.nanoTime() - start) / 1e6 / logins;
+        assertTrue(connections.size() <= 2, "connections " + connections.size());
+
+        // The previous behaviour: a new client, with its own connection pool, for every call
+        connections.clear();
+        start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            assertEquals("access", loginWithNewClient().authenticationResult().accessToken());
+        }
+        double perCallMs = (System.nanoTime() - start) / 1e6 / logins;
+        assertEquals(logins, connections.size());
+
+        System.out.printf("Cognito initiateAuth against a local stub: %.2f ms with the shared client, %.2f ms with a client per call%n",
+                sharedMs, perCallMs);
+    }
+
+    @Test
+    void asyncLoginsDoNotHoldTheCallingThread() throws Exception {
+        authGate = new CountDownLatch(1);
+        List<CompletableFuture<InitiateAuthResponse>> logins = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            logins.add(service.initiateAuthAsync("user" + i + "@example.com", "password"));
+        }
+        // All twenty are waiting on the stub at once, and none of them blocked this thread
+        assertFalse(logins.stream().anyMatch(CompletableFuture::isDone));
+
+        authGate.countDown();
+        for (CompletableFuture<InitiateAuthResponse> login : logins) {
+            assertEquals("access", login.get(5, TimeUnit.SECONDS).authenticationResult().accessToken());
+        }
+    }
+
+    private InitiateAuthResponse loginWithNewClient() {
+        try (CognitoIdentityProviderClient client = CognitoIdentityProviderClient.builder()
+                .region(Region.of("us-east-1"))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .endpointOverride(URI.create(endpoint))
+                .build()) {
+            CognitoService perCall = new CognitoService();
+            ReflectionTestUtils.setField(perCall, "cognitoClient", client);
+            ReflectionTestUtils.setField(perCall, "clientId", "client");
+            ReflectionTestUtils.setField(perCall, "userPoolId", "us-east-1_pool");
+            return perCall.initiateAuth("user@example.com", "password");
+        }
+    }
+}
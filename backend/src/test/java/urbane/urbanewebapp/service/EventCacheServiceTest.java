@@ -0,0 +1,86 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.repository.EventRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventCacheServiceTest {
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final EventCacheService cache = new EventCacheService();
+
+    private final Event boston = event(1L, "MA", "Boston", "2030-01-05T18:00");
+
+    @BeforeEach
+    void setUp() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(EventCacheService.BY_ID, EventCacheService.BY_STATE,
+                EventCacheService.BY_STATE_CITY, EventCacheService.PAGES);
+        ReflectionTestUtils.setField(cache, "cacheManager", cacheManager);
+        ReflectionTestUtils.setField(cache, "eventRepository", eventRepository);
+        when(eventRepository.findWithCreatorById(anyLong())).thenReturn(Optional.of(boston));
+        when(eventRepository.findEventsByState(any())).thenReturn(List.of(boston));
+        when(eventRepository.findEventsByStateAndCity(any(), any())).thenReturn(List.of(boston));
+        when(eventRepository.findPage(anyLong(), any(), any(), any(), any(), anyBoolean(), any(Pageable.class)))
+                .thenReturn(List.of(boston));
+    }
+
+    @Test
+    void writeEvictsOnlyTheEventsKeys() {
+        warm();
+        cache.evict(event(2L, "TX", "Austin", "2030-01-05T18:00"));
+        warm();
+        // Texas keys and the unfiltered page from the start; MA lists and the later page stay cached
+        verify(eventRepository, times(1)).findWithCreatorById(1L);
+        verify(eventRepository, times(1)).findEventsByState("MA");
+        verify(eventRepository, times(1)).findEventsByStateAndCity("MA", "Boston");
+        verify(eventRepository, times(2)).findPage(eq(0L), eq(null), any(), any(), any(), eq(false), any(Pageable.class));
+        verify(eventRepository, times(1)).findPage(eq(0L), eq("ma"), any(), any(), any(), eq(false), any(Pageable.class));
+        verify(eventRepository, times(1)).findPage(eq(5L), any(), any(), any(), any(), anyBoolean(), any(Pageable.class));
+    }
+
+    @Test
+    void rsvpEvictsOnlyCapacityPages() {
+        warm();
+        cache.evictForRsvp(boston);
+        warm();
+        verify(eventRepository, times(1)).findWithCreatorById(1L);
+        verify(eventRepository, times(1)).findEventsByState("MA");
+        verify(eventRepository, times(2)).findPage(eq(0L), eq(null), any(), any(), any(), eq(true), any(Pageable.class));
+        verify(eventRepository, times(1)).findPage(eq(0L), eq(null), any(), any(), any(), eq(false), any(Pageable.class));
+    }
+
+    private void warm() {
+        cache.findById(1L);
+        cache.findByState("MA");
+        cache.findByStateAndCity("MA", "Boston");
+        cache.findPage(new EventCacheService.PageKey(0L, 21, null, null, null, null, false));
+        cache.findPage(new EventCacheService.PageKey(0L, 21, null, null, null, null, true));
+        cache.findPage(new EventCacheService.PageKey(0L, 21, "ma", null, null, null, false));
+        cache.findPage(new EventCacheService.PageKey(5L, 21, null, null, null, null, false));
+    }
+
+    private static Event event(Long id, String state, String city, String date) {
+        Event event = new Event();
+        event.setId(id);
+        event.setState(state);
+        event.setCity(city);
+        event.setDate(date);
+        return event;
+    }
+}
@@ -0,0 +1,67 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GeoCellIndexTest {
+
+    @Test
+    void withinMatchesBruteForce() {
+        Random random = new Random(11);
+        GeoCellIndex index = new GeoCellIndex(0.5);
+        Map<Long, double[]> points = new HashMap<>();
+        for (long id = 0; id < 5000; id++) {
+            // Clustered around a few spots, including the antimeridian and near a pole
+            double[][] centers = {{40.7, -74.0}, {0.0, 179.9}, {0.0, -179.9}, {88.5, 10.0}, {-33.9, 151.2}};
+            double[] center = centers[random.nextInt(centers.length)];
+            double latitude = Math.max(-90, Math.min(90, center[0] + random.nextGaussian()));
+            double longitude = ((center[1] + random.nextGaussian() * 2 + 540) % 360) - 180;
+            points.put(id, new double[]{latitude, longitude});
+            index.put(id, latitude, longitude);
+        }
+        // Moves and removals keep the grid consistent
+        for (long id = 0; id < 500; id++) {
+            if (id % 2 == 0) {
+                index.remove(id);
+                points.remove(id);
+            } else {
+                double[] moved = {40.7 + random.nextGaussian(), -74.0 + random.nextGaussian()};
+                index.put(id, moved[0], moved[1]);
+                points.put(id, moved);
+            }
+        }
+        assertEquals(points.size(), index.size());
+
+        double[][] queries = {{40.7, -74.0}, {0.0, 180.0}, {0.2, -179.95}, {89.0, -170.0}, {-33.9, 151.2}};
+        for (double[] query : queries) {
+            for (double radiusKm : new double[]{5, 50, 300}) {
+                Set<Long> expected = new HashSet<>();
+                points.forEach((id, point) -> {
+                    if (GeoCellIndex.distanceKm(query[0], query[1], point[0], point[1]) <= radiusKm) {
+                        expected.add(id);
+                    }
+                });
+                Set<Long> actual = new HashSet<>();
+                index.within(query[0], query[1], radiusKm, (id, distanceKm) -> actual.add(id));
+                assertEquals(expected, actual, "query " + query[0] + "," + query[1] + " radius " + radiusKm);
+            }
+        }
+    }
+
+    @Test
+    void parseCoordinateRejectsInvalidValues() {
+        assertEquals(40.7128, GeoCellIndex.parseCoordinate(" 40.7128 ", 90));
+        assertNull(GeoCellIndex.parseCoordinate("", 90));
+        assertNull(GeoCellIndex.parseCoordinate("north", 90));
+        assertNull(GeoCellIndex.parseCoordinate("91", 90));
+        assertNull(GeoCellIndex.parseCoordinate("NaN", 180));
+    }
+}
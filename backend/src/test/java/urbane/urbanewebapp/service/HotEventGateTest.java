@@ -0,0 +1,184 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.model.User;
+import urbane.urbanewebapp.repository.EventRepository;
+import urbane.urbanewebapp.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The gate's own behaviour: admission from memory, duplicate checks, write-back and failed writes.
+ * Joins through the database are covered by RsvpServiceTest.
+ */
+@DataJpaTest(showSql = false)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({HotEventGate.class, EventCacheService.class})
+// The tests flush explicitly; the background writer must not get there first
+@TestPropertySource(properties = "events.hot.flush-interval-ms=3600000")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HotEventGateTest {
+
+    private static final long CAPACITY = 10;
+
+    @Autowired
+    private HotEventGate hotEventGate;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Event event;
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3 * CAPACITY; i++) {
+            User user = new User();
+            user.setEmail("hot" + i + "@example.com");
+            users.add(user);
+        }
+        userRepository.saveAll(users).forEach(user -> userIds.add(user.getId()));
+
+        event = new Event();
+        event.setTitle("Flash meetup");
+        event.setCapacity(CAPACITY);
+        event = eventRepository.save(event);
+        hotEventGate.activate(event);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(hotEventGate, "jdbcTemplate", jdbcTemplate);
+        hotEventGate.deactivate(event.getId());
+        jdbcTemplate.update("DELETE FROM user_events WHERE event_id = ?", event.getId());
+        eventRepository.deleteById(event.getId());
+        userRepository.deleteAllById(userIds);
+    }
+
+    @Test
+    void admitsExactlyTheCapacityAndWritesItBack() {
+        assertTrue(hotEventGate.isKnownUser(userIds.get(0)));
+        assertFalse(hotEventGate.isKnownUser(Long.MAX_VALUE));
+        // An unknown user that got past that check is admitted, then dropped by the writer, which hands the seat back
+        assertEquals(RsvpService.JoinOutcome.JOINED, hotEventGate.tryJoin(Long.MAX_VALUE, event.getId()));
+        hotEventGate.flush();
+
+        Map<RsvpService.JoinOutcome, Long> outcomes = userIds.parallelStream()
+                .map(userId -> hotEventGate.tryJoin(userId, event.getId()))
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        assertEquals(CAPACITY, outcomes.get(RsvpService.JoinOutcome.JOINED));
+        assertEquals(userIds.size() - CAPACITY, outcomes.get(RsvpService.JoinOutcome.FULL));
+
+        hotEventGate.flush();
+        assertEquals(CAPACITY, eventRepository.findById(event.getId()).orElseThrow().getAttendeeCount());
+        assertEquals(CAPACITY, attendeeRows());
+        assertEquals(RsvpService.JoinOutcome.ALREADY_JOINED, hotEventGate.tryJoin(firstAttendee(), event.getId()));
+    }
+
+    @Test
+    void activatingAgainKeepsTheSeatsOfQueuedJoins() {
+        assertEquals(RsvpService.JoinOutcome.JOINED, hotEventGate.tryJoin(userIds.get(0), event.getId()));
+        // The queued join isn't in the database yet, so a fresh gate would sell its seat again
+        hotEventGate.activate(eventRepository.findById(event.getId()).orElseThrow());
+
+        assertEquals(CAPACITY - 1, joinAll());
+        hotEventGate.flush();
+        assertEquals(CAPACITY, eventRepository.findById(event.getId()).orElseThrow().getAttendeeCount());
+    }
+
+    @Test
+    void databaseFailingPartwayThroughABatchKeepsEveryAdmittedRsvp() {
+        List<Long> joiners = userIds.subList(0, 5);
+        joiners.forEach(userId -> hotEventGate.tryJoin(userId, event.getId()));
+
+        // The batch hits a bad row, so rows are retried one by one; the third then times out on a lock
+        AtomicInteger inserts = new AtomicInteger();
+        JdbcTemplate failing = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (sql.startsWith("INSERT")) {
+                    int call = inserts.incrementAndGet();
+                    if (call == 1) {
+                        throw new DataIntegrityViolationException("bad row");
+                    }
+                    if (call == 4) {
+                        throw new CannotAcquireLockException("lock timeout");
+                    }
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        ReflectionTestUtils.setField(hotEventGate, "jdbcTemplate", failing);
+        assertThrows(CannotAcquireLockException.class, hotEventGate::flush);
+        assertEquals(2, attendeeRows());
+
+        // Only the uncommitted rows were queued again, and no seat was handed back
+        ReflectionTestUtils.setField(hotEventGate, "jdbcTemplate", jdbcTemplate);
+        hotEventGate.flush();
+        assertEquals(joiners.size(), attendeeRows());
+        assertEquals(joiners.size(), eventRepository.findById(event.getId()).orElseThrow().getAttendeeCount());
+        assertEquals(RsvpService.JoinOutcome.ALREADY_JOINED, hotEventGate.tryJoin(joiners.get(0), event.getId()));
+        assertEquals(CAPACITY - joiners.size(), joinAll());
+    }
+
+    @Test
+    void rsvpAlreadyInTheDatabaseKeepsItsSeat() {
+        long userId = userIds.get(0);
+        assertEquals(RsvpService.JoinOutcome.JOINED, hotEventGate.tryJoin(userId, event.getId()));
+        // As if an earlier flush committed the row but failed before it could dequeue it
+        jdbcTemplate.update("INSERT INTO user_events (user_id, event_id, rsvp_status) VALUES (?, ?, true)",
+                userId, event.getId());
+
+        hotEventGate.flush();
+        assertEquals(RsvpService.JoinOutcome.ALREADY_JOINED, hotEventGate.tryJoin(userId, event.getId()));
+        assertEquals(CAPACITY - 1, joinAll());
+    }
+
+    // Joins every test user, returning how many were admitted
+    private long joinAll() {
+        return userIds.stream()
+                .filter(userId -> hotEventGate.tryJoin(userId, event.getId()) == RsvpService.JoinOutcome.JOINED)
+                .count();
+    }
+
+    private long attendeeRows() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_events WHERE event_id = ?", Long.class, event.getId());
+    }
+
+    private long firstAttendee() {
+        return jdbcTemplate.queryForObject("SELECT MIN(user_id) FROM user_events WHERE event_id = ?", Long.class, event.getId());
+    }
+}
@@ -0,0 +1,184 @@
+package urbane.urbanewebapp.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import urbane.urbanewebapp.model.Interest;
+import urbane.urbanewebapp.model.Location;
+import urbane.urbanewebapp.model.Profile;
+import urbane.urbanewebapp.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the entity-based scoring loop MatchmakingController used to run over every user
+ * with the columnar MatchmakingSnapshot (exact and LSH-approximate candidate generation),
+ * at 10k, 100k and 1M synthetic users.
+ * Run with {@code main} (needs a test-compiled classpath), not as part of the test suite.
+ * The 1M setup needs about 3 GB of heap, mostly for the legacy User entities.
+ *
+ * Local run on one core, avg ms/op:
+ * <pre>
+ *   users    legacy loop   columnar scan   columnar top-20
+ *   10k        8.5           0.06            0.13
+ *   100k     116.6           0.51            1.65
+ *   1M       638.6          19.0            23.2
+ * </pre>
+ * The 1M row comes from a run with -Xmx3g. With only 3 iterations its error bars are wide (±1185 ms on the
+ * legacy loop), so read it as an order of magnitude.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MatchmakingScoringBenchmark {
+
+    private static final String[] TRAVEL_STYLES = {"solo", "group", "mixed", "flexible"};
+    private static final String[] LANGUAGES = {"English", "Spanish", "French", "German", "Italian",
+            "Portuguese", "Mandarin", "Japanese", "Arabic", "Hindi", "Bengali", "Russian"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int users;
+
+    private List<User> entities;
+    private User currentUser;
+    private MatchmakingSnapshot snapshot;
+    private MatchProfile currentProfile;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Interest> interests = new ArrayList<>();
+        for (long id = 1; id <= 16; id++) {
+            Interest interest = new Interest();
+            interest.setId(id);
+            interest.setName("Interest " + id);
+            interests.add(interest);
+        }
+        List<Location> locations = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            Location location = new Location();
+            location.setId(id);
+            location.setCity("City " + id);
+            location.setState("State " + (id % 50));
+            location.setCountry("Country " + (id % 20));
+            locations.add(location);
+        }
+
+        entities = new ArrayList<>(users);
+        List<MatchProfile> profiles = new ArrayList<>(users);
+        for (long userId = 1; userId <= users; userId++) {
+            User user = new User();
+            user.setId(userId);
+            Collections.shuffle(interests, random);
+            user.setInterests(new ArrayList<>(interests.subList(0, random.nextInt(6))));
+
+            Profile profile = new Profile();
+            profile.setAge(18L + random.nextInt(50));
+            profile.setTravelStyle(TRAVEL_STYLES[random.nextInt(TRAVEL_STYLES.length)]);
+            profile.setLanguages(LANGUAGES[random.nextInt(LANGUAGES.length)] + ", "
+                    + LANGUAGES[random.nextInt(LANGUAGES.length)]);
+            profile.setLocation(locations.get(random.nextInt(locations.size())));
+            user.setProfile(profile);
+
+            entities.add(user);
+            profiles.add(MatchProfile.from(user));
+        }
+        currentUser = entities.get(0);
+        currentProfile = profiles.get(0);
+        snapshot = MatchmakingSnapshot.build(profiles, true);
+    }
+
+    @Benchmark
+    public void legacyEntityLoop(Blackhole blackhole) {
+        Profile currentProfile = currentUser.getProfile();
+        Set<Long> currentUserInterestIds = currentUser.getInterests().stream()
+                .map(Interest::getId)
+                .collect(Collectors.toSet());
+
+        for (User user : entities) {
+            if (user.getId().equals(currentUser.getId())) continue;
+            Profile profile = user.getProfile();
+            boolean hasSimilarity = false;
+
+            Set<Long> userInterestIds = user.getInterests().stream()
+                    .map(Interest::getId)
+                    .collect(Collectors.toSet());
+            userInterestIds.retainAll(currentUserInterestIds);
+            if (!userInterestIds.isEmpty()) {
+                hasSimilarity = true;
+            }
+            if (Math.abs(currentProfile.getAge() - profile.getAge()) <= 5) {
+                hasSimilarity = true;
+            }
+            Location currentLoc = currentProfile.getLocation();
+            Location userLoc = profile.getLocation();
+            if (currentLoc.getCity().equalsIgnoreCase(userLoc.getCity())
+                    || currentLoc.getState().equalsIgnoreCase(userLoc.getState())
+                    || currentLoc.getCountry().equalsIgnoreCase(userLoc.getCountry())) {
+                hasSimilarity = true;
+            }
+            List<String> currentLangList = new ArrayList<>(Arrays.asList(currentProfile.getLanguages().split(",")));
+            List<String> userLangList = new ArrayList<>(Arrays.asList(profile.getLanguages().split(",")));
+            currentLangList.replaceAll(String::trim);
+            userLangList.replaceAll(String::trim);
+            currentLangList.retainAll(userLangList);
+            if (!currentLangList.isEmpty()) {
+                hasSimilarity = true;
+            }
+            String currentTravelStyle = currentProfile.getTravelStyle().trim();
+            String userTravelStyle = profile.getTravelStyle().trim();
+            if (currentTravelStyle.equalsIgnoreCase(userTravelStyle)
+                    || currentTravelStyle.equalsIgnoreCase("flexible") || userTravelStyle.equalsIgnoreCase("flexible")
+                    || currentTravelStyle.equalsIgnoreCase("mixed") || userTravelStyle.equalsIgnoreCase("mixed")) {
+                hasSimilarity = true;
+            }
+            blackhole.consume(hasSimilarity);
+        }
+    }
+
+    @Benchmark
+    public void columnarScan(Blackhole blackhole) {
+        MatchmakingSnapshot.MatchQuery query = snapshot.encode(currentProfile);
+        for (int ordinal = 0; ordinal < snapshot.size(); ordinal++) {
+            blackhole.consume(snapshot.score(query, ordinal));
+        }
+    }
+
+    @Benchmark
+    public MatchmakingSnapshot.MatchPage columnarTopMatches() {
+        return snapshot.findTopMatches(currentProfile, Set.of(), 20, null);
+    }
+
+    @Benchmark
+    public MatchmakingSnapshot.MatchPage approximateTopMatches() {
+        return snapshot.findApproximateTopMatches(currentProfile, Set.of(), 20, null, MatchmakingSnapshot.DEFAULT_RADIUS_KM);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MatchmakingScoringBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
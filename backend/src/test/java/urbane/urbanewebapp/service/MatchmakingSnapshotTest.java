@@ -0,0 +1,135 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchmakingSnapshotTest {
+
+    private static final String[] TRAVEL_STYLES = {"solo", "group", "mixed", "flexible", null};
+    private static final double RECALL_FLOOR = 0.8;
+    private static final String[] CITIES = {"New York", "Boston", "Austin", null};
+
+    @Test
+    void incrementalDeltasMatchFullRebuild() {
+        Random random = new Random(7);
+        Map<Long, MatchProfile> database = new HashMap<>();
+        for (long userId = 1; userId <= 200; userId++) {
+            database.put(userId, randomProfile(userId, random, 20));
+        }
+        MatchmakingSnapshot incremental = MatchmakingSnapshot.build(new ArrayList<>(database.values()), true);
+
+        // Edits, new profiles (including enough new interests to widen the bitmask) and deletions
+        for (int i = 0; i < 500; i++) {
+            long userId = 1 + random.nextInt(260);
+            if (random.nextInt(10) == 0) {
+                database.remove(userId);
+                incremental.remove(userId);
+            } else {
+                MatchProfile profile = randomProfile(userId, random, 150);
+                database.put(userId, profile);
+                incremental.apply(profile);
+            }
+        }
+
+        MatchmakingSnapshot rebuilt = MatchmakingSnapshot.build(new ArrayList<>(database.values()), true);
+        assertTrue(incremental.differences(rebuilt).isEmpty());
+        assertEquals(rebuilt.userCount(), incremental.userCount());
+
+        for (MatchProfile profile : database.values()) {
+            assertEquals(rebuilt.findTopMatches(profile, Set.of(), 25, null),
+                    incremental.findTopMatches(profile, Set.of(), 25, null));
+            assertEquals(rebuilt.findApproximateTopMatches(profile, Set.of(), 25, null, MatchmakingSnapshot.DEFAULT_RADIUS_KM),
+                    incremental.findApproximateTopMatches(profile, Set.of(), 25, null, MatchmakingSnapshot.DEFAULT_RADIUS_KM));
+        }
+    }
+
+    @Test
+    void approximateModeRecallAgainstExactScorer() {
+        Random random = new Random(3);
+        String[] languages = {"English", "Spanish", "French", "German", "Italian", "Portuguese",
+                "Mandarin", "Japanese", "Arabic", "Hindi", "Bengali", "Russian"};
+        List<MatchProfile> profiles = new ArrayList<>();
+        for (long userId = 1; userId <= 50_000; userId++) {
+            long[] interests = random.longs(1 + random.nextInt(5), 1, 17).distinct().toArray();
+            profiles.add(new MatchProfile(userId, 18L + random.nextInt(50),
+                    TRAVEL_STYLES[random.nextInt(4)],
+                    languages[random.nextInt(languages.length)] + ", " + languages[random.nextInt(languages.length)],
+                    "City " + random.nextInt(500), "State " + random.nextInt(50), "Country " + random.nextInt(20),
+                    null, null, interests));
+        }
+        MatchmakingSnapshot snapshot = MatchmakingSnapshot.build(profiles, true);
+
+        int queries = 200;
+        int k = 20;
+        int found = 0;
+        for (int i = 0; i < queries; i++) {
+            MatchProfile query = profiles.get(random.nextInt(profiles.size()));
+            // Ties at the k-th score are interchangeable, so a hit is any match scoring at least that much
+            List<MatchmakingSnapshot.ScoredMatch> exact = snapshot.findTopMatches(query, Set.of(), k, null).matches();
+            int kthScore = exact.get(exact.size() - 1).score();
+            for (MatchmakingSnapshot.ScoredMatch match : snapshot.findApproximateTopMatches(
+                    query, Set.of(), k, null, MatchmakingSnapshot.DEFAULT_RADIUS_KM).matches()) {
+                if (match.score() >= kthScore) {
+                    found++;
+                }
+            }
+        }
+        double recall = found / (double) (queries * k);
+        System.out.printf("Approximate matching recall@%d over %d users: %.3f%n", k, profiles.size(), recall);
+        assertTrue(recall >= RECALL_FLOOR, "recall " + recall);
+    }
+
+    @Test
+    void differencesReportsDrift() {
+        MatchProfile alice = new MatchProfile(1, 30L, "solo", "English", "Boston", "MA", "US", null, null, new long[]{1, 2});
+        MatchProfile bob = new MatchProfile(2, 31L, "group", "French", "Austin", "TX", "US", null, null, new long[]{2});
+        MatchmakingSnapshot snapshot = MatchmakingSnapshot.build(List.of(alice, bob));
+
+        MatchProfile movedBob = new MatchProfile(2, 31L, "group", "French", "Boston", "MA", "US", null, null, new long[]{2});
+        MatchmakingSnapshot rebuilt = MatchmakingSnapshot.build(List.of(alice, movedBob));
+
+        assertEquals(Set.of(2L), snapshot.differences(rebuilt));
+    }
+
+    @Test
+    void nearbyUsersMatchAcrossCityLines() {
+        // Jersey City is ~9 km from midtown Manhattan; Philadelphia ~130 km
+        MatchProfile manhattan = new MatchProfile(1, null, null, null, "New York", "NY", null, 40.7831, -73.9712, new long[0]);
+        MatchProfile jerseyCity = new MatchProfile(2, null, null, null, "Jersey City", "NJ", null, 40.7178, -74.0431, new long[0]);
+        MatchProfile philadelphia = new MatchProfile(3, null, null, null, "Philadelphia", "PA", null, 39.9526, -75.1652, new long[0]);
+        MatchmakingSnapshot snapshot = MatchmakingSnapshot.build(List.of(manhattan, jerseyCity, philadelphia));
+
+        List<MatchmakingSnapshot.ScoredMatch> within50 = snapshot.findTopMatches(manhattan, Set.of(), 10, null).matches();
+        assertEquals(List.of(2L), within50.stream().map(MatchmakingSnapshot.ScoredMatch::userId).toList());
+        double distanceKm = GeoCellIndex.distanceKm(40.7831, -73.9712, 40.7178, -74.0431);
+        assertEquals(MatchmakingSnapshot.proximityPoints(distanceKm, 50), within50.get(0).score());
+
+        List<MatchmakingSnapshot.ScoredMatch> within200 = snapshot.findTopMatches(manhattan, Set.of(), 10, null, 200).matches();
+        assertEquals(List.of(2L, 3L), within200.stream().map(MatchmakingSnapshot.ScoredMatch::userId).toList());
+    }
+
+    private static MatchProfile randomProfile(long userId, Random random, int interestPool) {
+        long[] interests = random.longs(random.nextInt(6), 1, interestPool + 1).distinct().toArray();
+        boolean hasCoordinates = random.nextBoolean();
+        return new MatchProfile(
+                userId,
+                random.nextInt(5) == 0 ? null : 18L + random.nextInt(40),
+                TRAVEL_STYLES[random.nextInt(TRAVEL_STYLES.length)],
+                random.nextBoolean() ? "English, Spanish" : "French",
+                CITIES[random.nextInt(CITIES.length)],
+                "State " + random.nextInt(3),
+                "US",
+                hasCoordinates ? 40 + random.nextDouble() : null,
+                hasCoordinates ? -74 + random.nextDouble() : null,
+                interests);
+    }
+}
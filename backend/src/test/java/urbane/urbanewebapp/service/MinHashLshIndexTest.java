@@ -0,0 +1,29 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MinHashLshIndexTest {
+
+    @Test
+    void largeBucketsAreNotReadInInsertionOrder() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 2, 7L);
+        List<String> tokens = List.of("i:hiking", "i:jazz", "c:boston");
+        // Identical token sets: every band holds all ids in one bucket, far more than a scan reads
+        int ids = 5000;
+        for (int id = 0; id < ids; id++) {
+            index.put(id, tokens);
+        }
+
+        int[] candidates = index.candidates(tokens, 1000, ids);
+        assertTrue(candidates.length > 1000, "read " + candidates.length);
+        assertTrue(Arrays.stream(candidates).anyMatch(id -> id >= ids - 1000), "no late ids");
+        // The same query reads the same windows
+        assertArrayEquals(candidates, index.candidates(tokens, 1000, ids));
+    }
+}
@@ -0,0 +1,150 @@
+package urbane.urbanewebapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import urbane.urbanewebapp.model.Event;
+import urbane.urbanewebapp.model.User;
+import urbane.urbanewebapp.repository.EventRepository;
+import urbane.urbanewebapp.repository.UserRepository;
+import urbane.urbanewebapp.repository.WaitlistEntryRepository;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every join commits on its own connection, so the tests run outside a transaction and clean up after themselves.
+ */
+@DataJpaTest(showSql = false)
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(RsvpService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RsvpServiceTest {
+
+    private static final int JOINERS = 400;
+    private static final long CAPACITY = 50;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private RsvpService rsvpService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WaitlistEntryRepository waitlistEntryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Event event;
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < JOINERS; i++) {
+            User user = new User();
+            user.setEmail("joiner" + i + "@example.com");
+            users.add(user);
+        }
+        userRepository.saveAll(users).forEach(user -> userIds.add(user.getId()));
+
+        event = new Event();
+        event.setTitle("Popular meetup");
+        event.setCapacity(CAPACITY);
+        event = eventRepository.save(event);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM user_events WHERE event_id = ?", event.getId());
+        jdbcTemplate.update("DELETE FROM event_waitlist WHERE event_id = ?", event.getId());
+        eventRepository.deleteById(event.getId());
+        userRepository.deleteAllById(userIds);
+    }
+
+    @Test
+    void concurrentJoinsFillExactlyTheCapacity() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<RsvpService.JoinOutcome>> joins = new ArrayList<>();
+        for (Long userId : userIds) {
+            joins.add(pool.submit(() -> {
+                start.await();
+                return rsvpService.join(userId, event.getId());
+            }));
+        }
+        // A second attempt by an early joiner is a duplicate, whether or not they got a seat
+        joins.add(pool.submit(() -> {
+            start.await();
+            return rsvpService.join(userIds.get(0), event.getId());
+        }));
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        Map<RsvpService.JoinOutcome, Integer> outcomes = new EnumMap<>(RsvpService.JoinOutcome.class);
+        for (Future<RsvpService.JoinOutcome> join : joins) {
+            outcomes.merge(join.get(), 1, Integer::sum);
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        pool.shutdown();
+        System.out.printf("%d concurrent joins on %d threads in %.3f s (%.0f joins/s): %s%n",
+                joins.size(), THREADS, seconds, joins.size() / seconds, outcomes);
+
+        assertEquals(CAPACITY, (long) outcomes.getOrDefault(RsvpService.JoinOutcome.JOINED, 0));
+        assertEquals(CAPACITY, eventRepository.findById(event.getId()).orElseThrow().getAttendeeCount());
+        assertEquals(CAPACITY, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user_events WHERE event_id = ?", Long.class, event.getId()));
+        assertEquals(joins.size() - CAPACITY, (long) outcomes.getOrDefault(RsvpService.JoinOutcome.FULL, 0)
+                + outcomes.getOrDefault(RsvpService.JoinOutcome.ALREADY_JOINED, 0));
+    }
+
+    @Test
+    void withdrawalPromotesTheWaitlistInOrder() {
+        long eventId = event.getId();
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(RsvpService.JoinOutcome.JOINED, rsvpService.join(userIds.get(i), eventId));
+        }
+        long first = userIds.get((int) CAPACITY);
+        long second = userIds.get((int) CAPACITY + 1);
+        assertEquals(RsvpService.JoinOutcome.FULL, rsvpService.join(first, eventId));
+        assertEquals(1, rsvpService.joinWaitlist(first, eventId));
+        assertEquals(RsvpService.JoinOutcome.FULL, rsvpService.join(second, eventId));
+        assertEquals(2, rsvpService.joinWaitlist(second, eventId));
+        assertEquals(2, rsvpService.joinWaitlist(second, eventId));
+
+        assertTrue(rsvpService.withdraw(userIds.get(0), eventId, true));
+
+        assertEquals(0, waitlistEntryRepository.findPosition(first, eventId));
+        assertEquals(1, waitlistEntryRepository.findPosition(second, eventId));
+        assertEquals(RsvpService.JoinOutcome.ALREADY_JOINED, rsvpService.join(first, eventId));
+        assertEquals(CAPACITY, eventRepository.findById(eventId).orElseThrow().getAttendeeCount());
+
+        // Leaving the waitlist is a withdrawal too
+        assertFalse(rsvpService.withdraw(second, eventId, true));
+        assertEquals(0, waitlistEntryRepository.findPosition(second, eventId));
+    }
+}
@@ -78,7 +78,11 @@ const EventDetailPage = () => {
     if (!user || !event) return
 
     try {
-      await eventApi.joinEvent(user.id, event.id)
+      // Full events put the user on the waitlist; they are promoted automatically when a seat frees up
+      const waitlistPosition = await eventApi.joinEvent(user.id, event.id)
+      if (waitlistPosition !== null) {
+        alert(`This event is full. You're #${waitlistPosition} on the waitlist and will be added when a seat opens.`)
+      }
       // Reload event and attendees
       const eventData = await eventApi.getEventById(event.id)
       setEvent(eventData)
@@ -14,6 +14,8 @@ const HomePage = () => {
   const [activeTab, setActiveTab] = useState<'friends' | 'events'>('friends')
   const [events, setEvents] = useState<EventWithAttendees[]>([])
   const [loading, setLoading] = useState(true)
+  const [eventsCursor, setEventsCursor] = useState<string | null>(null)
+  const [loadingMoreEvents, setLoadingMoreEvents] = useState(false)
   const [error, setError] = useState('')
   const [showCreateForm, setShowCreateForm] = useState(false)
   const [creating, setCreating] = useState(false)
@@ -56,41 +58,62 @@ const HomePage = () => {
 
     // Fetch events - for now, we'll fetch all events by a default state
     // In the future, this should be based on user's location
-    loadEvents()
+    loadEvents(userData.id)
     loadPotentialMatches(userData.id)
     loadMatches(userData.id)
   }, [navigate])
 
-  const loadEvents = async () => {
+  const loadEvents = async (userId = user?.id) => {
     try {
       setLoading(true)
       setError('')
       
-      // Fetch all events (we'll filter by location later when user profile has location)
-      const allEvents = await eventApi.getAllEvents()
+      // Fetch the first page, attendee counts and the user's joined flags included (we'll filter by location later when user profile has location)
+      const { events: firstPage, nextCursor } = await eventApi.getAllEvents({ userId })
       
-      // Fetch attendee counts for each event
-      const eventsWithAttendees = await Promise.all(
-        allEvents.map(async (event) => {
-          try {
-            const attendeeCount = await eventApi.getAttendeesCount(event.id)
-            return { ...event, attendeeCount }
-          } catch {
-            return { ...event, attendeeCount: 0 }
-          }
-        })
-      )
-      
-      setEvents(eventsWithAttendees)
+      setEvents(firstPage)
+      setEventsCursor(nextCursor)
     } catch (err) {
       console.error('Failed to load events:', err)
       setError('Failed to load events. Please try again later.')
       setEvents([])
+      setEventsCursor(null)
     } finally {
       setLoading(false)
     }
   }
 
+  const loadMoreEvents = async () => {
+    if (!eventsCursor) return
+    try {
+      setLoadingMoreEvents(true)
+      const { events: nextPage, nextCursor } = await eventApi.getAllEvents({ userId: user?.id }, eventsCursor)
+      setEvents((prev) => [...prev, ...nextPage])
+      setEventsCursor(nextCursor)
+    } catch (err) {
+      console.error('Failed to load more events:', err)
+      setError('Failed to load events. Please try again later.')
+    } finally {
+      setLoadingMoreEvents(false)
+    }
+  }
+
+  // Refresh the counts and joined flags of the events already loaded, keeping the pages loaded so far
+  const refreshAttendeeCounts = async () => {
+    if (events.length === 0) return
+    const eventIds = events.map((event) => event.id)
+    const [counts, joinedIds] = await Promise.all([
+      eventApi.getAttendeesCounts(eventIds),
+      user ? eventApi.getRsvpStatuses(user.id, eventIds) : Promise.resolve([] as number[]),
+    ])
+    const joined = new Set(joinedIds)
+    setEvents((prev) => prev.map((event) => ({
+      ...event,
+      attendeeCount: counts[event.id] ?? event.attendeeCount,
+      joined: user ? joined.has(event.id) : event.joined,
+    })))
+  }
+
   const handleCreateEvent = async (e: FormEvent<HTMLFormElement>) => {
     e.preventDefault()
     if (!user) return
@@ -160,19 +183,15 @@ const HomePage = () => {
       return
     }
 
-    // Check if event is at capacity
-    if (event?.capacity && event.attendeeCount !== undefined) {
-      if (event.attendeeCount >= event.capacity) {
-        alert('This event is at full capacity. No more attendees can join.')
-        return
-      }
-    }
-
     try {
       console.log('Joining event:', eventId, 'for user:', user.id)
-      await eventApi.joinEvent(user.id, eventId)
-      // Reload events to get updated attendee counts
-      await loadEvents()
+      // Full events put the user on the waitlist; they are promoted automatically when a seat frees up
+      const waitlistPosition = await eventApi.joinEvent(user.id, eventId)
+      if (waitlistPosition !== null) {
+        alert(`This event is full. You're #${waitlistPosition} on the waitlist and will be added when a seat opens.`)
+      }
+      // Update attendee counts
+      await refreshAttendeeCounts()
       // If viewing event details, reload attendees
       if (selectedEvent?.id === eventId) {
         loadEventAttendees(eventId)
@@ -181,7 +200,7 @@ const HomePage = () => {
       console.error('Error joining event:', err)
       const errorMessage = err instanceof Error ? err.message : 'Failed to join event'
       if (errorMessage.includes('400') || errorMessage.includes('Bad Request')) {
-        alert('Unable to join event. It may be at full capacity or you may have already joined.')
+        alert('Unable to join event. It may be full, or you may have already joined.')
       } else {
         alert(errorMessage)
       }
@@ -927,10 +946,19 @@ const HomePage = () => {
                             <span className="flex-1 rounded-xl border border-cyan-400/50 bg-cyan-400/10 px-4 py-2 text-center text-sm text-cyan-200">
                               Your Event
                             </span>
-                          ) : event.capacity && event.attendeeCount !== undefined && event.attendeeCount >= event.capacity ? (
-                            <span className="flex-1 rounded-xl border border-red-400/50 bg-red-400/10 px-4 py-2 text-center text-sm text-red-200">
-                              Full
+                          ) : event.joined ? (
+                            <span className="flex-1 rounded-xl border border-emerald-400/50 bg-emerald-400/10 px-4 py-2 text-center text-sm text-emerald-200">
+                              Joined
                             </span>
+                          ) : event.capacity && event.attendeeCount !== undefined && event.attendeeCount >= event.capacity ? (
+                            <motion.button
+                              onClick={() => handleJoinEvent(event.id)}
+                              className="flex-1 rounded-xl border border-red-400/50 bg-red-400/10 px-4 py-2 text-center text-sm text-red-200 transition hover:bg-red-400/20"
+                              whileHover={{ scale: 1.02 }}
+                              whileTap={{ scale: 0.98 }}
+                            >
+                              Full · Join Waitlist
+                            </motion.button>
                           ) : (
                             <motion.button
                               onClick={() => handleJoinEvent(event.id)}
@@ -1019,10 +1047,19 @@ const HomePage = () => {
                             <span className="flex-1 rounded-xl border border-cyan-400/50 bg-cyan-400/10 px-4 py-2 text-center text-sm text-cyan-200">
                               Your Event
                             </span>
-                          ) : event.capacity && event.attendeeCount !== undefined && event.attendeeCount >= event.capacity ? (
-                            <span className="flex-1 rounded-xl border border-red-400/50 bg-red-400/10 px-4 py-2 text-center text-sm text-red-200">
-                              Full
+                          ) : event.joined ? (
+                            <span className="flex-1 rounded-xl border border-emerald-400/50 bg-emerald-400/10 px-4 py-2 text-center text-sm text-emerald-200">
+                              Joined
                             </span>
+                          ) : event.capacity && event.attendeeCount !== undefined && event.attendeeCount >= event.capacity ? (
+                            <motion.button
+                              onClick={() => handleJoinEvent(event.id)}
+                              className="flex-1 rounded-xl border border-red-400/50 bg-red-400/10 px-4 py-2 text-center text-sm text-red-200 transition hover:bg-red-400/20"
+                              whileHover={{ scale: 1.02 }}
+                              whileTap={{ scale: 0.98 }}
+                            >
+                              Full · Join Waitlist
+                            </motion.button>
                           ) : (
                             <motion.button
                               onClick={() => handleJoinEvent(event.id)}
@@ -1048,6 +1085,20 @@ const HomePage = () => {
                       <p className="text-slate-400">No events found. Be the first to create one!</p>
                     </div>
                   )}
+
+                  {eventsCursor && (
+                    <div className="flex justify-center">
+                      <motion.button
+                        onClick={loadMoreEvents}
+                        disabled={loadingMoreEvents}
+                        className="rounded-xl border border-white/20 bg-white/5 px-6 py-2 text-sm text-slate-200 transition hover:border-cyan-300 hover:bg-white/10 hover:text-white disabled:opacity-50"
+                        whileHover={{ scale: 1.02 }}
+                        whileTap={{ scale: 0.98 }}
+                      >
+                        {loadingMoreEvents ? 'Loading...' : 'Load more events'}
+                      </motion.button>
+                    </div>
+                  )}
                 </div>
               )}
             </div>
@@ -319,6 +319,22 @@ export interface BackendEvent {
     email: string
     profile?: BackendProfile | null
   } | null
+  distanceKm?: number
+  attendeeCount?: number
+  // Whether the requesting user has joined; only present when the listing was asked for a userId
+  joined?: boolean
+}
+
+// Server-side filters for the paged event listing; dates are ISO yyyy-MM-dd, both inclusive
+export interface EventFilters {
+  state?: string
+  city?: string
+  dateFrom?: string
+  dateTo?: string
+  hasCapacity?: boolean
+  limit?: number
+  // Adds each event's joined flag for this user
+  userId?: number
 }
 
 // Backend Interest model
@@ -373,15 +389,48 @@ export const eventApi = {
     return handleResponse<BackendEvent>(response)
   },
 
-  // Get all events
-  getAllEvents: async (): Promise<BackendEvent[]> => {
-    const response = await fetch(`${API_BASE_URL}/getAllEvents`, {
+  // Get one page of events in id order, optionally filtered; pass nextCursor back to load the next page
+  getAllEvents: async (
+    filters: EventFilters = {},
+    cursor?: string | null
+  ): Promise<{ events: BackendEvent[]; nextCursor: string | null }> => {
+    const params = new URLSearchParams()
+    if (filters.state) params.set('state', filters.state)
+    if (filters.city) params.set('city', filters.city)
+    if (filters.dateFrom) params.set('dateFrom', filters.dateFrom)
+    if (filters.dateTo) params.set('dateTo', filters.dateTo)
+    if (filters.hasCapacity) params.set('hasCapacity', 'true')
+    if (filters.limit != null) params.set('limit', String(filters.limit))
+    if (filters.userId != null) params.set('userId', String(filters.userId))
+    if (cursor) params.set('cursor', cursor)
+    const response = await fetch(`${API_BASE_URL}/getAllEvents?${params}`, {
       method: 'GET',
       headers: {
         'Content-Type': 'application/json',
       },
     })
-    return handleResponse<BackendEvent[]>(response)
+    const events = await handleResponse<BackendEvent[]>(response)
+    return { events, nextCursor: response.headers.get('X-Next-Cursor') }
+  },
+
+  // Get events within radiusKm of a point, nearest first; pass nextCursor back to load the next page
+  getEventsNear: async (
+    lat: number,
+    lon: number,
+    radiusKm?: number,
+    cursor?: string | null
+  ): Promise<{ events: BackendEvent[]; nextCursor: string | null }> => {
+    const params = new URLSearchParams({ lat: String(lat), lon: String(lon) })
+    if (radiusKm != null) params.set('radiusKm', String(radiusKm))
+    if (cursor) params.set('cursor', cursor)
+    const response = await fetch(`${API_BASE_URL}/events/near?${params}`, {
+      method: 'GET',
+      headers: {
+        'Content-Type': 'application/json',
+      },
+    })
+    const events = await handleResponse<BackendEvent[]>(response)
+    return { events, nextCursor: response.headers.get('X-Next-Cursor') }
   },
 
   // Get events by state
@@ -441,7 +490,8 @@ export const eventApi = {
   },
 
   // Join an event
-  joinEvent: async (userId: number, eventId: number): Promise<void> => {
+  // Join an event; resolves to the user's waitlist position when the event was full (202), otherwise null
+  joinEvent: async (userId: number, eventId: number): Promise<number | null> => {
     const response = await fetch(`${API_BASE_URL}/JoinUserEvent`, {
       method: 'POST',
       headers: {
@@ -460,13 +510,34 @@ export const eventApi = {
         // Try to parse error message
         try {
           const error = JSON.parse(errorText)
-          throw new Error(error.message || 'Event is at full capacity or you already joined')
+          throw new Error(error.message || 'You already joined this event')
         } catch {
-          throw new Error('Event is at full capacity or you already joined this event')
+          throw new Error('You already joined this event')
         }
       }
+      if (response.status === 409) {
+        throw new Error('This event is full')
+      }
       throw new Error(`Failed to join event: ${response.status} ${errorText}`)
     }
+    if (response.status === 202) {
+      const waitlisted = await response.json()
+      return waitlisted.waitlistPosition ?? null
+    }
+    return null
+  },
+
+  // Get a user's waitlist position for an event (1 = next in line), or null when not waiting
+  getWaitlistPosition: async (userId: number, eventId: number): Promise<number | null> => {
+    const response = await fetch(`${API_BASE_URL}/getWaitlistPosition/${userId}/${eventId}`, {
+      method: 'GET',
+      headers: {
+        'Content-Type': 'application/json',
+      },
+    })
+    if (response.status === 404) return null
+    const data = await handleResponse<{ waitlistPosition: number }>(response)
+    return data.waitlistPosition
   },
 
   // Get attendees count for an event
@@ -480,6 +551,30 @@ export const eventApi = {
     return handleResponse<number>(response)
   },
 
+  // Get attendee counts for several events in one request, keyed by event id
+  getAttendeesCounts: async (eventIds: number[]): Promise<Record<number, number>> => {
+    const params = new URLSearchParams({ eventIds: eventIds.join(',') })
+    const response = await fetch(`${API_BASE_URL}/getAttendeesCounts?${params}`, {
+      method: 'GET',
+      headers: {
+        'Content-Type': 'application/json',
+      },
+    })
+    return handleResponse<Record<number, number>>(response)
+  },
+
+  // Get which of the given events a user has joined, in one request
+  getRsvpStatuses: async (userId: number, eventIds: number[]): Promise<number[]> => {
+    const params = new URLSearchParams({ eventIds: eventIds.join(',') })
+    const response = await fetch(`${API_BASE_URL}/getRsvpStatuses/${userId}?${params}`, {
+      method: 'GET',
+      headers: {
+        'Content-Type': 'application/json',
+      },
+    })
+    return handleResponse<number[]>(response)
+  },
+
   // Get all users attending an event
   getEventAttendees: async (eventId: number): Promise<BackendProfile[]> => {
     const response = await fetch(`${API_BASE_URL}/getAllUsersAttending/${eventId}`, {
@@ -539,6 +634,7 @@ export interface PotentialMatch {
   profile: BackendProfile
   interests: BackendInterest[]
   similarities: string[]
+  score?: number
 }
 
 export interface UserProfile {